@@ -1,16 +1,19 @@
 package com.tsp.algorithm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
+import com.tsp.util.CandidateNeighbors;
 import com.tsp.util.CityData.CityInfo;
 import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
 import com.tsp.util.TSPUtils;
 
 public class ACO implements TSPAlgorithm {
-  private double pathLength;
-  private long executionTime;
 
   private static final int NUM_ANTS = 30;
   private static final int MAX_ITERATIONS = 100;
@@ -19,153 +22,460 @@ public class ACO implements TSPAlgorithm {
   private static final double BETA = 2.0; // distance importance
   private static final double Q = 100.0; // pheromone deposit factor
 
+  // MAX-MIN ant system
+  private static final double P_BEST = 0.05; // chance to rebuild the best tour at convergence
+  private static final double LAMBDA = 0.05; // branching factor threshold
+  private static final double STAGNATION_BRANCHING = 2.0; // avg branching factor of a converged colony
+  private static final int STAGNATION_CHECK_INTERVAL = 10;
+
+  // metric the ants see, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  // if > 0 ants only choose between the k nearest unvisited cities
+  private int candidateListSize = 0;
+  private boolean parallel = true;
+  private Long seed = null;
+  private boolean maxMin = false;
+  private int maxIterations = MAX_ITERATIONS;
+  private long timeBudgetMillis = 0; // 0 = no limit
+  private int maxStagnation = 0; // 0 = never stop early
+
+  public ACO() {
+    this(DistanceMetric.VINCENTY);
+  }
+
+  public ACO(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  /*
+   * with candidate lists no dense distance matrix is built and every step only
+   * looks at k cities instead of all unvisited ones, which is what makes large
+   * instances feasible. 0 disables them
+   */
+  public void setCandidateListSize(int candidateListSize) {
+    this.candidateListSize = candidateListSize;
+  }
+
+  /*
+   * builds the ants of an iteration concurrently on the common fork-join pool.
+   * every ant has its own random generator and buffers and the pheromones are
+   * only read while the ants walk, so no locking is needed
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  // fixed seed for reproducible runs (also in parallel mode), null for a random one
+  public void setSeed(Long seed) {
+    this.seed = seed;
+  }
+
+  /*
+   * MAX-MIN ant system: only the iteration best ant deposits pheromone, the
+   * pheromones are kept within [tau min, tau max] so no edge ever becomes
+   * impossible or certain, the iteration best tour is improved with 2-opt and
+   * Or-opt before it deposits and the pheromones are reset once the colony has
+   * converged
+   */
+  public void setMaxMin(boolean maxMin) {
+    this.maxMin = maxMin;
+  }
+
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  // wall clock limit for the iterations (the matrix is built before), 0 = none
+  public void setTimeBudgetMillis(long timeBudgetMillis) {
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  // stop once the best tour hasnt improved for this many iterations, 0 = never
+  public void setMaxStagnation(int maxStagnation) {
+    this.maxStagnation = maxStagnation;
+  }
+
+  // per ant state, reused in every iteration
+  private static class Ant {
+    final SplittableRandom random;
+    final int[] tour; // city indices, start city repeated at the end
+    final boolean[] visited;
+    final double[] weights; // roulette scratch, one entry per option of a city
+    double length;
+
+    Ant(SplittableRandom random, int numCities, int numOptions) {
+      this.random = random;
+      this.tour = new int[numCities + 1];
+      this.visited = new boolean[numCities];
+      this.weights = new double[numOptions];
+    }
+  }
+
+  /*
+   * the edges an ant can choose from, stored per city as "options". without
+   * candidate lists the options of city i are all other cities, with candidate
+   * lists only its k nearest ones. pheromones, the heuristic eta^beta and the
+   * choice info tau^alpha * eta^beta are flat arrays with one entry per option:
+   *
+   * value of the r-th option of city i = array[i * numOptions + r]
+   *
+   * so with candidate lists the colony needs O(n*k) instead of O(n^2) memory
+   */
+  private static class Colony {
+    final int numCities;
+    final int numOptions;
+    final DistanceMatrix distances;
+    final CandidateNeighbors candidates; // null = all cities are options
+    final DistanceMatrix fallback; // cheap distances to find the nearest unvisited city
+    final double[] pheromones;
+    final double[] heuristic;
+    final double[] choiceInfo;
+    double tauMin = 0;
+    double tauMax = Double.MAX_VALUE;
+
+    Colony(DistanceMatrix distances, CandidateNeighbors candidates, DistanceMatrix fallback) {
+      this.numCities = distances.size();
+      this.numOptions = candidates != null ? candidates.getK() : Math.max(0, numCities - 1);
+      this.distances = distances;
+      this.candidates = candidates;
+      this.fallback = fallback;
+      this.pheromones = new double[numCities * numOptions];
+      this.heuristic = new double[numCities * numOptions];
+      this.choiceInfo = new double[numCities * numOptions];
+
+      double initialPheromone = 1.0;
+      Arrays.fill(pheromones, initialPheromone);
+      for (int i = 0; i < numCities; i++) {
+        for (int r = 0; r < numOptions; r++) {
+          double d = candidates != null
+              ? candidates.neighborDistance(i, r)
+              : distances.get(i, option(i, r));
+          heuristic[i * numOptions + r] = Math.pow(1.0 / d, BETA);
+        }
+      }
+    }
+
+    // city of the r-th option of city i
+    int option(int i, int r) {
+      if (candidates != null) {
+        return candidates.neighbor(i, r);
+      }
+      return r < i ? r : r + 1;
+    }
+
+    // option index of city j in the options of city i, -1 if j isnt one
+    int slot(int i, int j) {
+      if (candidates == null) {
+        return i == j ? -1 : (j < i ? j : j - 1);
+      }
+      for (int r = 0; r < numOptions; r++) {
+        if (candidates.neighbor(i, r) == j) {
+          return r;
+        }
+      }
+      return -1;
+    }
+
+    /*
+     * tau max = 1 / (rho * best length), tau min so that a converged colony
+     * rebuilds the best tour with probability P_BEST (Stuetzle & Hoos)
+     */
+    void updateBounds(double bestLength) {
+      tauMax = 1.0 / (EVAPORATION_RATE * bestLength);
+      double pDec = Math.pow(P_BEST, 1.0 / Math.max(1, numCities));
+      double avg = Math.max(2.0, numOptions / 2.0);
+      tauMin = Math.min(tauMax, tauMax * (1 - pDec) / ((avg - 1) * pDec));
+    }
+
+    void clampPheromones() {
+      for (int e = 0; e < pheromones.length; e++) {
+        pheromones[e] = Math.max(tauMin, Math.min(tauMax, pheromones[e]));
+      }
+    }
+
+    /*
+     * average number of options per city whose pheromone is above
+     * tau min + lambda * (tau max - tau min). close to 2 means every city has
+     * settled on its two tour neighbors and the ants build the same tour
+     */
+    double branchingFactor() {
+      double threshold = tauMin + LAMBDA * (tauMax - tauMin);
+      long count = 0;
+      for (double pheromone : pheromones) {
+        if (pheromone > threshold) {
+          count++;
+        }
+      }
+      return numCities == 0 ? 0 : (double) count / numCities;
+    }
+
+    // tau^alpha * eta^beta, computed once per iteration instead of once per ant step
+    void computeChoiceInfo() {
+      for (int e = 0; e < choiceInfo.length; e++) {
+        choiceInfo[e] = Math.pow(pheromones[e], ALPHA) * heuristic[e];
+      }
+    }
+  }
+
+  /*
+   * reports the best tour whenever an iteration improves it. on a stop
+   * request the ants that are not built yet are skipped, the iteration is
+   * dropped and the best tour so far is returned (nearest neighbor if there
+   * is none yet)
+   */
   @Override
-  public List<CityInfo> findPath(List<CityInfo> cities) {
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
     long startTime = System.nanoTime();
 
     int numCities = cities.size();
-    double[][] distances = TSPUtils.calculateDistanceMatrix(cities);
-    double[][] pheromones = initializePheromones(numCities);
-    List<CityInfo> bestPath = null;
+    CandidateNeighbors candidates = candidateListSize > 0
+        ? CandidateNeighbors.build(cities, candidateListSize, metric)
+        : null;
+    DistanceMatrix distances = candidates != null
+        ? candidates
+        : TSPUtils.calculateDistanceMatrix(cities, metric);
+    // with candidate lists the on demand distances would be slow for the
+    // nearest unvisited fallback, the chord metric ranks cities the same way
+    Colony colony = new Colony(distances, candidates,
+        candidates != null ? DistanceMetric.CHORD.prepare(cities) : distances);
+    int[] bestTour = null;
     double bestLength = Double.MAX_VALUE;
 
-    Random random = new Random();
+    /*
+     * every ant gets its own generator split off a root generator in a fixed
+     * order. the result of a seeded run therefore doesnt depend on which
+     * thread builds which ant
+     */
+    SplittableRandom root = seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+    Ant[] ants = new Ant[NUM_ANTS];
+    for (int i = 0; i < NUM_ANTS; i++) {
+      ants[i] = new Ant(root.split(), numCities, colony.numOptions);
+    }
+
+    if (maxMin) {
+      // start at tau max for a tour as good as nearest neighbor
+      double nearestNeighborLength = tourLength(nearestNeighborTour(colony), distances);
+      colony.updateBounds(nearestNeighborLength);
+      Arrays.fill(colony.pheromones, colony.tauMax);
+    }
+
+    long deadline = timeBudgetMillis > 0
+        ? System.nanoTime() + timeBudgetMillis * 1_000_000
+        : Long.MAX_VALUE;
+    int iterationsWithoutImprovement = 0;
+    int iterations = 0;
 
     // main ACO loop
-    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+    // the first iteration always runs so there is a tour to return
+    for (int iteration = 0; iteration < Math.max(1, maxIterations)
+        && (iteration == 0 || System.nanoTime() < deadline); iteration++) {
+      colony.computeChoiceInfo();
+      iterations++;
+
       // generate solutions for all ants
-      for (int ant = 0; ant < NUM_ANTS; ant++) {
-        List<CityInfo> currentPath = constructAntPath(cities, distances, pheromones, random);
-        double currentLength = DistanceCalculator.calculatePathLength(currentPath);
+      IntStream antIndices = IntStream.range(0, NUM_ANTS);
+      if (parallel) {
+        antIndices = antIndices.parallel();
+      }
+      antIndices.forEach(i -> {
+        if (context.shouldStop()) {
+          return;
+        }
+        Ant ant = ants[i];
+        constructAntPath(ant, colony);
+        ant.length = tourLength(ant.tour, distances);
+      });
+      if (context.shouldStop()) {
+        break;
+      }
 
-        if (currentLength < bestLength) {
-          bestLength = currentLength;
-          bestPath = new ArrayList<>(currentPath);
+      // merge in ant order so ties are resolved the same way in every run
+      Ant iterationBest = ants[0];
+      for (Ant ant : ants) {
+        if (ant.length < iterationBest.length) {
+          iterationBest = ant;
         }
       }
 
-      // update pheromones
-      evaporatePheromones(pheromones);
-      updatePheromones(pheromones, cities, bestPath, bestLength);
+      int[] iterationTour = iterationBest.tour.clone();
+      double iterationLength = iterationBest.length;
+      if (maxMin) {
+        iterationLength = improveTour(iterationTour, colony);
+      }
+
+      if (iterationLength < bestLength) {
+        bestLength = iterationLength;
+        bestTour = iterationTour;
+        iterationsWithoutImprovement = 0;
+        if (context.isDue()) {
+          context.report(cities, Arrays.copyOf(bestTour, numCities), startTime);
+        }
+      } else if (maxStagnation > 0 && ++iterationsWithoutImprovement >= maxStagnation) {
+        break;
+      }
+
+      // update pheromones once per iteration
+      evaporatePheromones(colony);
+      if (maxMin) {
+        updatePheromones(colony, iterationTour, 1.0 / iterationLength);
+        colony.updateBounds(bestLength);
+        colony.clampPheromones();
+        if (iteration % STAGNATION_CHECK_INTERVAL == 0
+            && colony.branchingFactor() < STAGNATION_BRANCHING) {
+          Arrays.fill(colony.pheromones, colony.tauMax);
+        }
+      } else {
+        updatePheromones(colony, bestTour, Q / bestLength);
+      }
     }
 
-    this.pathLength = bestLength;
-    this.executionTime = System.nanoTime() - startTime;
+    if (bestTour == null) {
+      bestTour = nearestNeighborTour(colony);
+    }
+    List<CityInfo> bestPath = toPath(cities, bestTour);
 
-    return bestPath;
+    // the ants compare lengths from the matrix, the reported length is exact
+    return new TSPResult(bestPath, DistanceCalculator.calculatePathLength(bestPath),
+        System.nanoTime() - startTime, Double.NaN, iterations);
   }
 
-  private List<CityInfo> constructAntPath(List<CityInfo> cities,
-      double[][] distances,
-      double[][] pheromones,
-      Random random) {
-    int numCities = cities.size();
-    List<CityInfo> path = new ArrayList<>();
-    boolean[] visited = new boolean[numCities];
+  private void constructAntPath(Ant ant, Colony colony) {
+    int numCities = colony.numCities;
+    Arrays.fill(ant.visited, false);
 
     // start from first city
     int currentCity = 0;
-    path.add(cities.get(currentCity));
-    visited[currentCity] = true;
+    ant.tour[0] = currentCity;
+    ant.visited[currentCity] = true;
 
     // path to remaining cities
     for (int i = 1; i < numCities; i++) {
-      int nextCity = selectNextCity(currentCity, visited, pheromones, distances, random);
-      path.add(cities.get(nextCity));
-      visited[nextCity] = true;
+      int nextCity = selectNextCity(currentCity, ant, colony);
+      ant.tour[i] = nextCity;
+      ant.visited[nextCity] = true;
       currentCity = nextCity;
     }
 
     // return to start
-    path.add(cities.get(0));
-
-    return path;
+    ant.tour[numCities] = 0;
   }
 
-  private int selectNextCity(int currentCity,
-      boolean[] visited,
-      double[][] pheromones,
-      double[][] distances,
-      Random random) {
-    List<Integer> unvisitedCities = new ArrayList<>();
-    List<Double> probabilities = new ArrayList<>();
+  // roulette wheel selection over the unvisited options of the current city
+  private int selectNextCity(int currentCity, Ant ant, Colony colony) {
+    int numOptions = colony.numOptions;
+    int offset = currentCity * numOptions;
+    double[] weights = ant.weights;
     double total = 0.0;
 
-    // calculate probabilities for each unvisited city
-    int cityIndex = 0;
-    for (boolean isVisited : visited) {
-      if (!isVisited) {
-        unvisitedCities.add(cityIndex);
-        double probability = Math.pow(pheromones[currentCity][cityIndex], ALPHA) *
-            Math.pow(1.0 / distances[currentCity][cityIndex], BETA);
-        probabilities.add(probability);
-        total += probability;
-      }
-      cityIndex++;
+    for (int r = 0; r < numOptions; r++) {
+      double weight = ant.visited[colony.option(currentCity, r)] ? 0.0 : colony.choiceInfo[offset + r];
+      weights[r] = weight;
+      total += weight;
+    }
+
+    // all options visited (only with candidate lists): go to the nearest unvisited city
+    if (total == 0.0) {
+      return nearestUnvisited(currentCity, ant.visited, colony.fallback);
     }
 
-    // select next city randomly based on probabilities
-    double r = random.nextDouble() * total;
+    double target = ant.random.nextDouble() * total;
     double sum = 0.0;
+    int last = -1;
 
-    for (int i = 0; i < unvisitedCities.size(); i++) {
-      sum += probabilities.get(i);
-      if (sum >= r) {
-        return unvisitedCities.get(i);
+    for (int r = 0; r < numOptions; r++) {
+      if (weights[r] > 0) {
+        last = r;
+        sum += weights[r];
+        if (sum >= target) {
+          break;
+        }
       }
     }
 
-    // fallback: return first unvisited city
-    return unvisitedCities.isEmpty() ? -1 : unvisitedCities.get(0);
+    return colony.option(currentCity, last);
   }
 
-  private double[][] initializePheromones(int numCities) {
-    double[][] pheromones = new double[numCities][numCities];
-    double initialPheromone = 1.0;
+  private int nearestUnvisited(int currentCity, boolean[] visited, DistanceMatrix distances) {
+    int nearest = -1;
+    double nearestDistance = Double.MAX_VALUE;
 
-    for (int i = 0; i < numCities; i++) {
-      for (int j = 0; j < numCities; j++) {
-        pheromones[i][j] = initialPheromone;
+    for (int i = 0; i < visited.length; i++) {
+      if (!visited[i]) {
+        double d = distances.get(currentCity, i);
+        if (d < nearestDistance) {
+          nearestDistance = d;
+          nearest = i;
+        }
       }
     }
 
-    return pheromones;
+    return nearest;
   }
 
-  private void evaporatePheromones(double[][] pheromones) {
-    for (int i = 0; i < pheromones.length; i++) {
-      for (int j = 0; j < pheromones.length; j++) {
-        pheromones[i][j] *= (1.0 - EVAPORATION_RATE);
-      }
+  // local search on a closed tour, returns its new length
+  private double improveTour(int[] tour, Colony colony) {
+    int numCities = colony.numCities;
+    int[] order = Arrays.copyOf(tour, numCities);
+    LocalSearch.optimize(order, colony.distances, colony.candidates);
+    System.arraycopy(order, 0, tour, 0, numCities);
+    tour[numCities] = order[0];
+    return tourLength(tour, colony.distances);
+  }
+
+  private int[] nearestNeighborTour(Colony colony) {
+    int numCities = colony.numCities;
+    int[] tour = new int[numCities + 1];
+    boolean[] visited = new boolean[numCities];
+    visited[0] = true;
+    for (int i = 1; i < numCities; i++) {
+      tour[i] = nearestUnvisited(tour[i - 1], visited, colony.fallback);
+      visited[tour[i]] = true;
     }
+    return tour;
   }
 
-  private void updatePheromones(double[][] pheromones,
-      List<CityInfo> cities,
-      List<CityInfo> bestPath,
-      double bestLength) {
-    double deposit = Q / bestLength;
+  private static double tourLength(int[] tour, DistanceMatrix distances) {
+    double length = 0;
+    for (int i = 0; i < tour.length - 1; i++) {
+      length += distances.get(tour[i], tour[i + 1]);
+    }
+    return length;
+  }
 
-    for (int i = 0; i < bestPath.size() - 1; i++) {
-      int cityIndex1 = cities.indexOf(bestPath.get(i));
-      int cityIndex2 = cities.indexOf(bestPath.get(i + 1));
-      pheromones[cityIndex1][cityIndex2] += deposit;
-      pheromones[cityIndex2][cityIndex1] += deposit;
+  private static List<CityInfo> toPath(List<CityInfo> cities, int[] tour) {
+    List<CityInfo> path = new ArrayList<>(tour.length);
+    for (int city : tour) {
+      path.add(cities.get(city));
     }
+    return path;
   }
 
-  @Override
-  public String getName() {
-    return "Ant Colony Optimization";
+  private void evaporatePheromones(Colony colony) {
+    double[] pheromones = colony.pheromones;
+    for (int e = 0; e < pheromones.length; e++) {
+      pheromones[e] *= (1.0 - EVAPORATION_RATE);
+    }
   }
 
-  @Override
-  public double getPathLength() {
-    return this.pathLength;
+  private void updatePheromones(Colony colony, int[] bestTour, double deposit) {
+    for (int i = 0; i < bestTour.length - 1; i++) {
+      int cityIndex1 = bestTour[i];
+      int cityIndex2 = bestTour[i + 1];
+      // edges outside the candidate lists have no pheromone
+      int slot1 = colony.slot(cityIndex1, cityIndex2);
+      int slot2 = colony.slot(cityIndex2, cityIndex1);
+      if (slot1 >= 0) {
+        colony.pheromones[cityIndex1 * colony.numOptions + slot1] += deposit;
+      }
+      if (slot2 >= 0) {
+        colony.pheromones[cityIndex2 * colony.numOptions + slot2] += deposit;
+      }
+    }
   }
 
   @Override
-  public long getExecutionTime() {
-    return this.executionTime;
+  public String getName() {
+    return "Ant Colony Optimization";
   }
 }
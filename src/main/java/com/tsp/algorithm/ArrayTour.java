@@ -0,0 +1,150 @@
+package com.tsp.algorithm;
+
+import java.util.Arrays;
+
+/*
+ * round trip as an array of cities plus the position of every city, for the
+ * local search solvers. the only change is a 2-opt move, which reverses one
+ * part of the array. the shorter side is reversed, reversing the rest gives
+ * the same round trip, only the direction of the array changes. so callers
+ * should never assume that next() keeps its direction over a move.
+ *
+ * every reversal can be recorded, rollback() undoes them back to a mark
+ */
+class ArrayTour {
+  final int n;
+  final int[] tour;
+  final int[] position;
+
+  // recorded reversals as (from, to) pairs, null when not recording
+  private int[] journal;
+  private int journalSize;
+
+  // works directly on the given array
+  ArrayTour(int[] tour) {
+    this.n = tour.length;
+    this.tour = tour;
+    this.position = new int[n];
+    for (int p = 0; p < n; p++) {
+      position[tour[p]] = p;
+    }
+  }
+
+  // replaces the tour with the n cities of source starting at offset, forgets the journal
+  void load(int[] source, int offset) {
+    System.arraycopy(source, offset, tour, 0, n);
+    for (int p = 0; p < n; p++) {
+      position[tour[p]] = p;
+    }
+    journalSize = 0;
+  }
+
+  int next(int city) {
+    int p = position[city] + 1;
+    return tour[p == n ? 0 : p];
+  }
+
+  int previous(int city) {
+    int p = position[city] - 1;
+    return tour[p < 0 ? n - 1 : p];
+  }
+
+  // whether city is one of the length cities starting at first in array order
+  boolean inSegment(int city, int first, int length) {
+    int offset = position[city] - position[first];
+    if (offset < 0) {
+      offset += n;
+    }
+    return offset < length;
+  }
+
+  /*
+   * removes the tour edges (t1,t2) and (t3,t4) and adds (t1,t3) and (t2,t4).
+   * t2 has to follow t1 in the same direction as t4 follows t3
+   */
+  void move(int t1, int t2, int t3, int t4) {
+    if (next(t1) == t2) {
+      reverse(position[t2], position[t3]);
+    } else {
+      reverse(position[t1], position[t4]);
+    }
+  }
+
+  // reverses the positions from..to (wrapping around), or the rest of the tour if shorter
+  void reverse(int from, int to) {
+    int length = to - from;
+    if (length < 0) {
+      length += n;
+    }
+    length++;
+
+    if (2 * length > n) {
+      int tmp = from;
+      from = to + 1 == n ? 0 : to + 1;
+      to = tmp == 0 ? n - 1 : tmp - 1;
+    }
+
+    flip(from, to);
+    if (journal != null) {
+      if (journalSize + 2 > journal.length) {
+        journal = Arrays.copyOf(journal, journal.length * 2);
+      }
+      journal[journalSize++] = from;
+      journal[journalSize++] = to;
+    }
+  }
+
+  private void flip(int from, int to) {
+    int length = to - from;
+    if (length < 0) {
+      length += n;
+    }
+    length++;
+
+    for (int swaps = length / 2; swaps > 0; swaps--) {
+      int a = tour[from];
+      int b = tour[to];
+      tour[from] = b;
+      position[b] = from;
+      tour[to] = a;
+      position[a] = to;
+      from = from + 1 == n ? 0 : from + 1;
+      to = to == 0 ? n - 1 : to - 1;
+    }
+  }
+
+  // starts recording reversals, returns the mark of the current state
+  int mark() {
+    if (journal == null) {
+      journal = new int[64];
+    }
+    return journalSize;
+  }
+
+  // undoes all reversals after the mark
+  void rollback(int mark) {
+    while (journalSize > mark) {
+      int to = journal[--journalSize];
+      int from = journal[--journalSize];
+      flip(from, to);
+    }
+  }
+
+  // forgets the recorded reversals, they can no longer be undone
+  void clearJournal() {
+    journalSize = 0;
+  }
+
+  // puts the city back to the first position, keeping the direction
+  void rotate(int city) {
+    int shift = position[city];
+    if (shift == 0) {
+      return;
+    }
+    int[] copy = tour.clone();
+    for (int p = 0; p < n; p++) {
+      tour[p] = copy[(p + shift) % n];
+      position[tour[p]] = p;
+    }
+  }
+}
@@ -2,38 +2,73 @@ package com.tsp.algorithm;
 
 import com.tsp.util.CityData.CityInfo;
 import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
 import com.tsp.util.TSPUtils;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 public class BranchAndBound implements TSPAlgorithm {
-  private double pathLength;
-  private long executionTime;
-  private static final double INFINITY = Double.MAX_VALUE;
   private static final long TIME_LIMIT_MS = 20000; // second timeout
-  private static final int CITY_LIMIT = 17; // second timeout
-  private long startTime;
+  private static final int CITY_LIMIT = 30; // visited cities are a bitmask in a long
+  private static final double TOLERANCE = 1e-9; // relative, covers rounding in the bounds
+  private static final int SPLIT_THRESHOLD = 2; // fork subtrees while a worker has fewer queued
 
+  // metric the search optimizes, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  /*
+   * one pool per parallelism, shared by all solves. pools are never shut
+   * down, their workers are daemon threads that exit after a while idle
+   */
+  private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  public BranchAndBound() {
+    this(DistanceMetric.VINCENTY);
+  }
+
+  public BranchAndBound(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  /*
+   * number of worker threads. with more than one the subtrees are searched on
+   * a fork-join pool, every worker has its own deque of subtrees and idle
+   * workers steal from the others. 1 runs the search on the calling thread with
+   * a single best-first queue. the returned tour is the same in both cases
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  /*
+   * a node only stores the city it adds and a pointer to its parent, the path
+   * is rebuilt by following the parents once a better tour is found. the
+   * visited cities are a bitmask, so expanding a node copies nothing
+   */
   private static class Node implements Comparable<Node> {
-    List<Integer> path;
-    boolean[] visited;
-    double cost;
+    final Node parent;
+    final long visited; // bit i set = city i is on the path
+    final int city; // last city of the path
+    final int first; // city after the start, -1 for the root
+    final int level;
+    final double cost;
     double bound;
-    int level;
-
-    Node(int numCities) {
-      path = new ArrayList<>();
-      visited = new boolean[numCities];
-      cost = 0;
-      bound = 0;
-      level = 0;
-    }
 
-    Node(Node parent) {
-      path = new ArrayList<>(parent.path);
-      visited = Arrays.copyOf(parent.visited, parent.visited.length);
-      cost = parent.cost;
-      bound = parent.bound;
-      level = parent.level;
+    Node(Node parent, long visited, int city, int first, int level, double cost) {
+      this.parent = parent;
+      this.visited = visited;
+      this.city = city;
+      this.first = first;
+      this.level = level;
+      this.cost = cost;
     }
 
     @Override
@@ -42,137 +77,315 @@ public class BranchAndBound implements TSPAlgorithm {
     }
   }
 
-  @Override
-  public List<CityInfo> findPath(List<CityInfo> cities) {
-    startTime = System.nanoTime();
+  // best tour found so far, replaced as a whole so cost and tour always match
+  private static class Incumbent {
+    final double cost;
+    final int[] tour;
 
-    int n = cities.size();
-    if (n < 2) {
-      return new ArrayList<>(cities);
-    } else if (n > CITY_LIMIT) {
-      // need a city limit becaus of O(n!) runtime
-      this.executionTime = 0;
-      this.pathLength = 0;
-      return null;
+    Incumbent(double cost, int[] tour) {
+      this.cost = cost;
+      this.tour = tour;
     }
 
-    // calculate distance matrix
-    double[][] distances = TSPUtils.calculateDistanceMatrix(cities);
-
-    // initialize priority queue with root node
-    PriorityQueue<Node> pq = new PriorityQueue<>();
-    Node root = new Node(n);
-    root.path.add(0); // start from first city
-    root.visited[0] = true;
-    root.bound = calculateBound(root, distances);
-
-    // inserts the specified element into this priority queue.
-    pq.offer(root);
-    Node bestNode = null;
-    double bestCost = INFINITY;
-
-    // branch and bound main loop
-    while (!pq.isEmpty() && (System.nanoTime() - startTime) / 1_000_000 < TIME_LIMIT_MS) {
-      /*
-       * retrieves and removes the head of this queue, or returns `null` if this queue
-       * is empty.
-       */
-      Node current = pq.poll();
-
-      // skip if bound is worse than best solution
-      if (current.bound >= bestCost) {
-        continue;
-      }
+    /*
+     * ties are broken by comparing the tours, so the search ends with the same
+     * tour no matter in which order the threads found the candidates
+     */
+    boolean isWorseThan(double otherCost, int[] otherTour) {
+      return otherCost < cost || (otherCost == cost && Arrays.compare(otherTour, tour) < 0);
+    }
+  }
+
+  /*
+   * state shared by all workers. the incumbent is read before every expansion,
+   * so a better tour found by one thread prunes the subtrees of all the others
+   * right away
+   */
+  private class Search {
+    final int n;
+    final DistanceMatrix distances;
+    final OneTreeBound bounds;
+    final AtomicReference<Incumbent> incumbent;
+    final List<CityInfo> cities;
+    final SolveContext context;
+    final double lowerBound; // bound of the root, reported with every better tour
+    final long startTime;
+    final LongAdder expanded = new LongAdder(); // nodes expanded by all workers
+
+    Search(DistanceMatrix distances, OneTreeBound bounds, Incumbent initial,
+        List<CityInfo> cities, SolveContext context, double lowerBound, long startTime) {
+      this.n = distances.size();
+      this.distances = distances;
+      this.bounds = bounds;
+      this.incumbent = new AtomicReference<>(initial);
+      this.cities = cities;
+      this.context = context;
+      this.lowerBound = lowerBound;
+      this.startTime = startTime;
+    }
+
+    // checked per node, also false once the context asks to stop
+    boolean timeLeft() {
+      return (System.nanoTime() - startTime) / 1_000_000 < TIME_LIMIT_MS && !context.shouldStop();
+    }
+
+    /*
+     * only prune strictly worse bounds (with some slack for rounding), so the
+     * tour that wins the tie break can never be cut off by an equally long one
+     */
+    boolean pruned(double bound) {
+      double best = incumbent.get().cost;
+      return bound > best + best * TOLERANCE;
+    }
 
-      // if all cities are visited
-      if (current.level == n - 1) {
-        // add cost to return to starting city
-        double finalCost = current.cost + distances[current.path.get(n - 1)][0];
-        if (finalCost < bestCost) {
-          current.path.add(0); // Complete the cycle
-          bestCost = finalCost;
-          bestNode = current;
+    void offer(double cost, int[] tour) {
+      Incumbent candidate = new Incumbent(cost, tour);
+      Incumbent current = incumbent.get();
+      while (current.isWorseThan(cost, tour)) {
+        if (incumbent.compareAndSet(current, candidate)) {
+          if (context.isDue()) {
+            context.report(cities, tour, startTime, lowerBound);
+          }
+          return;
         }
-        continue;
+        current = incumbent.get();
       }
+    }
+
+    // children that may still lead to a better tour, complete tours go to the incumbent
+    List<Node> expand(Node current) {
+      List<Node> children = new ArrayList<>();
+      expanded.increment();
 
       // try all possible next cities
-      for (int i = 0; i < n; i++) {
-        if (!current.visited[i]) {
-          Node newNode = new Node(current);
-          newNode.path.add(i);
-          newNode.visited[i] = true;
-          newNode.level = current.level + 1;
-          newNode.cost = current.cost + distances[current.path.get(current.level)][i];
-          newNode.bound = calculateBound(newNode, distances);
-
-          if (newNode.bound < bestCost) {
-            pq.offer(newNode);
+      for (int i = 1; i < n; i++) {
+        if ((current.visited & (1L << i)) != 0) {
+          continue;
+        }
+
+        int level = current.level + 1;
+        int first = current.first < 0 ? i : current.first;
+        long visited = current.visited | (1L << i);
+        double cost = current.cost + distances.get(current.city, i);
+
+        // if all cities are visited
+        if (level == n - 1) {
+          /*
+           * a tour and its mirror image have the same length, only accept the
+           * direction where the city after the start is smaller than the one
+           * before it returns
+           */
+          if (n > 2 && i < first) {
+            continue;
           }
+          // add cost to return to starting city
+          double finalCost = cost + distances.get(i, 0);
+          if (!pruned(finalCost)) {
+            offer(finalCost, toTour(new Node(current, visited, i, first, level, cost), n));
+          }
+          continue;
         }
-      }
-    }
 
-    // convert path indices back to cities
-    List<CityInfo> finalPath = new ArrayList<>();
-    if (bestNode != null && (System.nanoTime() - startTime) / 1_000_000 < TIME_LIMIT_MS) {
-      for (int index : bestNode.path) {
-        finalPath.add(cities.get(index));
+        // mirror images again: some unvisited city has to be able to come last
+        long unvisited = ~visited & ((1L << n) - 1);
+        if (level > 1 && 63 - Long.numberOfLeadingZeros(unvisited) < first) {
+          continue;
+        }
+
+        Node newNode = new Node(current, visited, i, first, level, cost);
+        newNode.bound = bounds.bound(visited, i, cost, distances);
+
+        if (!pruned(newNode.bound)) {
+          children.add(newNode);
+        }
       }
-      this.pathLength = bestCost;
-    } else {
-      // fallback to no path
-      finalPath = null;
-      this.pathLength = 0;
+
+      return children;
     }
 
-    this.executionTime = System.nanoTime() - startTime;
-    return finalPath;
-  }
+    // single thread: always expand the node with the lowest bound
+    void bestFirst(Node root) {
+      PriorityQueue<Node> pq = new PriorityQueue<>();
+      pq.offer(root);
 
-  private double calculateBound(Node node, double[][] distances) {
-    int n = distances.length;
-    double bound = node.cost;
-
-    // for each unvisited city, add minimum cost edge
-    for (int i = 0; i < n; i++) {
-      if (!node.visited[i]) {
-        double minEdge = INFINITY;
-        for (int j = 0; j < n; j++) {
-          if (i != j && (!node.visited[j] || j == 0)) {
-            minEdge = Math.min(minEdge, distances[i][j]);
-          }
+      while (!pq.isEmpty() && timeLeft()) {
+        Node current = pq.poll();
+
+        // skip if bound is worse than best solution
+        if (pruned(current.bound)) {
+          continue;
         }
-        bound += minEdge;
+
+        pq.addAll(expand(current));
       }
     }
 
-    // add minimum edge back to start city if not all cities are visited
-    if (node.level < n - 1) {
-      double minReturn = INFINITY;
-      for (int i = 0; i < n; i++) {
-        if (!node.visited[i]) {
-          minReturn = Math.min(minReturn, distances[i][0]);
+    /*
+     * depth first below the node, children in order of their bounds. while the
+     * own deque is almost empty the other children are forked so that idle
+     * workers can steal them, the best child is always searched right here
+     */
+    void explore(Node node) {
+      if (!timeLeft() || pruned(node.bound)) {
+        return;
+      }
+
+      List<Node> children = expand(node);
+      if (children.isEmpty()) {
+        return;
+      }
+      Collections.sort(children);
+
+      List<Subtree> forked = new ArrayList<>();
+      if (children.size() > 1 && ForkJoinTask.getSurplusQueuedTaskCount() < SPLIT_THRESHOLD) {
+        // worst first, so the owner pops the better ones first and thieves take the worst
+        for (int c = children.size() - 1; c > 0; c--) {
+          Subtree task = new Subtree(this, children.get(c));
+          task.fork();
+          forked.add(task);
         }
+        children = children.subList(0, 1);
+      }
+
+      for (Node child : children) {
+        explore(child);
+      }
+      for (int t = forked.size() - 1; t >= 0; t--) {
+        forked.get(t).join();
       }
-      bound += minReturn;
     }
+  }
 
-    return bound;
+  private static class Subtree extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Search search;
+    private final Node node;
+
+    Subtree(Search search, Node node) {
+      this.search = search;
+      this.node = node;
+    }
+
+    @Override
+    protected void compute() {
+      search.explore(node);
+    }
   }
 
-  @Override
-  public String getName() {
-    return "Branch And Bound";
+  private static ForkJoinPool pool(int parallelism) {
+    if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+      return ForkJoinPool.commonPool();
+    }
+    return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
   }
 
+  /*
+   * reports the start tour and every better one found by the search. when
+   * the time limit is hit or the context asks to stop, the best tour so far is
+   * returned, it is just not proven to be optimal
+   */
   @Override
-  public double getPathLength() {
-    return pathLength;
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
+    long startTime = System.nanoTime();
+
+    int n = cities.size();
+    if (n < 2) {
+      return new TSPResult(new ArrayList<>(cities), 0, System.nanoTime() - startTime);
+    } else if (n > CITY_LIMIT) {
+      // need a city limit becaus of O(n!) runtime
+      return new TSPResult(null, 0, 0);
+    }
+
+    // calculate distance matrix
+    DistanceMatrix distances = TSPUtils.calculateDistanceMatrix(cities, metric);
+
+    /*
+     * start with a good tour (nearest neighbor + local search) so that most branches
+     * are pruned right away, it is often already optimal
+     */
+    int[] initialTour = initialTour(distances);
+    double initialCost = tourLength(initialTour, distances);
+    OneTreeBound bounds = OneTreeBound.compute(distances, initialCost);
+
+    Node root = new Node(null, 1L, 0, -1, 0, 0); // start from first city
+    root.bound = bounds.bound(root.visited, root.city, root.cost, distances);
+
+    Search search = new Search(distances, bounds, new Incumbent(initialCost, initialTour),
+        cities, context, root.bound, startTime);
+    context.report(cities, initialTour, startTime, root.bound);
+
+    if (parallelism > 1) {
+      pool(parallelism).invoke(new Subtree(search, root));
+    } else {
+      search.bestFirst(root);
+    }
+
+    // convert path indices back to cities
+    List<CityInfo> finalPath = new ArrayList<>();
+    Incumbent best = search.incumbent.get();
+    for (int index : best.tour) {
+      finalPath.add(cities.get(index));
+    }
+    finalPath.add(cities.get(best.tour[0])); // complete the cycle
+    double pathLength = metric == DistanceMetric.VINCENTY
+        ? best.cost
+        : DistanceCalculator.calculatePathLength(finalPath);
+
+    return new TSPResult(finalPath, pathLength, System.nanoTime() - startTime, root.bound,
+        search.expanded.sum());
+  }
+
+  // city order of the path that ends in the node, starting with city 0
+  private static int[] toTour(Node node, int n) {
+    int[] tour = new int[n];
+    for (Node current = node; current != null; current = current.parent) {
+      tour[current.level] = current.city;
+    }
+    return tour;
+  }
+
+  private static int[] initialTour(DistanceMatrix distances) {
+    int n = distances.size();
+    int[] tour = new int[n];
+    boolean[] visited = new boolean[n];
+    visited[0] = true;
+
+    for (int i = 1; i < n; i++) {
+      int nearest = -1;
+      for (int j = 0; j < n; j++) {
+        if (!visited[j] && (nearest < 0
+            || distances.get(tour[i - 1], j) < distances.get(tour[i - 1], nearest))) {
+          nearest = j;
+        }
+      }
+      tour[i] = nearest;
+      visited[nearest] = true;
+    }
+
+    LocalSearch.optimize(tour, distances, null);
+
+    // same direction as the tours of the search, so it takes part in the tie break
+    if (n > 2 && tour[1] > tour[n - 1]) {
+      for (int from = 1, to = n - 1; from < to; from++, to--) {
+        int tmp = tour[from];
+        tour[from] = tour[to];
+        tour[to] = tmp;
+      }
+    }
+    return tour;
+  }
+
+  private static double tourLength(int[] tour, DistanceMatrix distances) {
+    double length = 0;
+    for (int i = 0; i < tour.length; i++) {
+      length += distances.get(tour[i], tour[(i + 1) % tour.length]);
+    }
+    return length;
   }
 
   @Override
-  public long getExecutionTime() {
-    return executionTime;
+  public String getName() {
+    return "Branch And Bound";
   }
 }
@@ -0,0 +1,227 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * christofides style tour: the minimum spanning tree plus a matching of its
+ * odd degree cities gives a graph where every city has even degree, so it has
+ * an euler circuit. the circuit with the already visited cities skipped is
+ * the tour.
+ *
+ * with a minimum weight perfect matching the tour is at most 1.5 times the
+ * optimum. that matching is O(n^3), here it is greedy instead (shortest
+ * edges between unmatched odd cities first, from the candidate lists for
+ * large instances), which is a lot faster and in practice only slightly worse
+ */
+public class Christofides implements TSPAlgorithm {
+  // metric the tree is built with, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  public Christofides() {
+    this(DistanceMetric.VINCENTY);
+  }
+
+  public Christofides(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  @Override
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
+    long startTime = System.nanoTime();
+
+    List<CityInfo> finalPath = new ArrayList<>();
+    double lowerBound = 0;
+    if (!cities.isEmpty()) {
+      SpanningTree tree = SpanningTree.build(cities, metric);
+      int n = tree.n;
+
+      // odd degree cities of the tree
+      int[] degree = new int[n];
+      for (int v = 0; v < n; v++) {
+        if (tree.parent[v] >= 0) {
+          degree[v]++;
+          degree[tree.parent[v]]++;
+        }
+      }
+      int[] odd = new int[n];
+      int oddCount = 0;
+      for (int v = 0; v < n; v++) {
+        if (degree[v] % 2 == 1) {
+          odd[oddCount++] = v;
+        }
+      }
+      int[] mate = greedyMatching(tree, Arrays.copyOf(odd, oddCount));
+
+      for (int index : eulerCircuit(tree, mate)) {
+        finalPath.add(cities.get(index));
+      }
+      finalPath.add(cities.get(0)); // complete the cycle
+      lowerBound = tree.weight;
+    }
+
+    // the weight of the minimum spanning tree, no tour is shorter
+    return new TSPResult(finalPath, DistanceCalculator.calculatePathLength(finalPath),
+        System.nanoTime() - startTime, lowerBound, 0);
+  }
+
+  /*
+   * pairs up the odd cities, mate[v] is the partner of v or -1. candidate
+   * pairs are sorted by distance once, cities that are left over because none
+   * of their candidates was free are matched to the nearest other left over
+   */
+  private static int[] greedyMatching(SpanningTree tree, int[] odd) {
+    int n = tree.n;
+    DistanceMatrix distances = tree.distances;
+    int[] mate = new int[n];
+    Arrays.fill(mate, -1);
+
+    boolean[] isOdd = new boolean[n];
+    for (int v : odd) {
+      isOdd[v] = true;
+    }
+
+    // candidate pairs, all of them if there are no neighbor lists
+    int m = odd.length;
+    int capacity = tree.candidates == null
+        ? m * (m - 1) / 2
+        : m * tree.candidates.getK();
+    int[] first = new int[capacity];
+    int[] second = new int[capacity];
+    int count = 0;
+    for (int a = 0; a < m; a++) {
+      if (tree.candidates == null) {
+        for (int b = a + 1; b < m; b++) {
+          first[count] = odd[a];
+          second[count++] = odd[b];
+        }
+      } else {
+        for (int r = 0; r < tree.candidates.getK(); r++) {
+          int v = tree.candidates.neighbor(odd[a], r);
+          if (isOdd[v]) {
+            first[count] = odd[a];
+            second[count++] = v;
+          }
+        }
+      }
+    }
+
+    // distance (as float bits, they sort like the distances) and pair index in one long
+    long[] sorted = new long[count];
+    for (int p = 0; p < count; p++) {
+      float d = (float) distances.get(first[p], second[p]);
+      sorted[p] = ((long) Float.floatToIntBits(d) << 32) | p;
+    }
+    Arrays.sort(sorted);
+
+    for (long entry : sorted) {
+      int p = (int) entry;
+      if (mate[first[p]] < 0 && mate[second[p]] < 0) {
+        mate[first[p]] = second[p];
+        mate[second[p]] = first[p];
+      }
+    }
+
+    // left overs
+    for (int a = 0; a < m; a++) {
+      int u = odd[a];
+      if (mate[u] >= 0) {
+        continue;
+      }
+      int nearest = -1;
+      for (int b = a + 1; b < m; b++) {
+        int v = odd[b];
+        if (mate[v] < 0 && (nearest < 0 || distances.get(u, v) < distances.get(u, nearest))) {
+          nearest = v;
+        }
+      }
+      mate[u] = nearest;
+      mate[nearest] = u;
+    }
+
+    return mate;
+  }
+
+  /*
+   * euler circuit over the tree and matching edges from city 0 (hierholzer),
+   * returns the cities in the order they are first reached
+   */
+  private static int[] eulerCircuit(SpanningTree tree, int[] mate) {
+    int n = tree.n;
+
+    // edge list: tree edges, then every matching edge once
+    int[] edgeFrom = new int[2 * n];
+    int[] edgeTo = new int[2 * n];
+    int edges = 0;
+    for (int v = 0; v < n; v++) {
+      if (tree.parent[v] >= 0) {
+        edgeFrom[edges] = tree.parent[v];
+        edgeTo[edges++] = v;
+      }
+      if (mate[v] > v) {
+        edgeFrom[edges] = v;
+        edgeTo[edges++] = mate[v];
+      }
+    }
+
+    // edges at every city as adjacency arrays
+    int[] start = new int[n + 1];
+    for (int e = 0; e < edges; e++) {
+      start[edgeFrom[e] + 1]++;
+      start[edgeTo[e] + 1]++;
+    }
+    for (int v = 0; v < n; v++) {
+      start[v + 1] += start[v];
+    }
+    int[] incident = new int[2 * edges];
+    int[] fill = Arrays.copyOf(start, n);
+    for (int e = 0; e < edges; e++) {
+      incident[fill[edgeFrom[e]]++] = e;
+      incident[fill[edgeTo[e]]++] = e;
+    }
+
+    boolean[] used = new boolean[edges];
+    int[] next = Arrays.copyOf(start, n); // next unchecked edge of every city
+    int[] stack = new int[edges + 1];
+    int size = 0;
+    boolean[] visited = new boolean[n];
+    int[] order = new int[n];
+    int count = 0;
+
+    stack[size++] = 0;
+    while (size > 0) {
+      int v = stack[size - 1];
+      while (next[v] < start[v + 1] && used[incident[next[v]]]) {
+        next[v]++;
+      }
+
+      if (next[v] < start[v + 1]) {
+        int e = incident[next[v]++];
+        used[e] = true;
+        stack[size++] = edgeFrom[e] == v ? edgeTo[e] : edgeFrom[e];
+      } else {
+        /*
+         * v is done. the finished cities form the circuit backwards, the first
+         * one is city 0 since with even degrees only the start can get stuck
+         */
+        size--;
+        if (!visited[v]) {
+          visited[v] = true;
+          order[count++] = v;
+        }
+      }
+    }
+
+    return order;
+  }
+
+  @Override
+  public String getName() {
+    return "Christofides";
+  }
+}
@@ -0,0 +1,52 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMetric;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * double tree heuristic: walk around the minimum spanning tree (every tree
+ * edge twice) and skip cities that were already visited. the walk is twice
+ * the tree weight and skipping never makes it longer (triangle inequality),
+ * so the tour is at most twice the optimum. visiting the cities in depth
+ * first order of the tree is exactly that walk with the shortcuts
+ */
+public class DoubleTree implements TSPAlgorithm {
+  // metric the tree is built with, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  public DoubleTree() {
+    this(DistanceMetric.VINCENTY);
+  }
+
+  public DoubleTree(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  @Override
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
+    long startTime = System.nanoTime();
+
+    List<CityInfo> finalPath = new ArrayList<>();
+    double lowerBound = 0;
+    if (!cities.isEmpty()) {
+      SpanningTree tree = SpanningTree.build(cities, metric);
+      for (int index : tree.preorder()) {
+        finalPath.add(cities.get(index));
+      }
+      finalPath.add(cities.get(0)); // complete the cycle
+      lowerBound = tree.weight;
+    }
+
+    // the weight of the minimum spanning tree, no tour is shorter
+    return new TSPResult(finalPath, DistanceCalculator.calculatePathLength(finalPath),
+        System.nanoTime() - startTime, lowerBound, 0);
+  }
+
+  @Override
+  public String getName() {
+    return "Double Tree";
+  }
+}
@@ -0,0 +1,573 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CandidateNeighbors;
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
+import com.tsp.util.TSPUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * island model genetic algorithm.
+ *
+ * every island has its own population of tours (city orders) and evolves it
+ * on its own thread. a child is made from two parents chosen by tournament
+ * with edge recombination: it walks from city to city and prefers the edges
+ * both parents have, the parent edges leading to cities with the fewest
+ * remaining options first, and only jumps to a random unvisited city when no
+ * parent edge is left. sometimes a random part of the child is reversed
+ * (mutation). after that 2-opt and Or-opt repair the child, but only around
+ * the edges neither parent had, so that costs little more than the crossover.
+ * the best tours of a generation always survive.
+ *
+ * the islands run a number of generations side by side and then each one sends
+ * copies of its best tours to the next island in a ring, where they replace
+ * the worst ones. between the migrations the islands don't share anything, and
+ * all populations and buffers are allocated once before the first generation
+ */
+public class GeneticAlgorithm implements TSPAlgorithm {
+  private static final int POPULATION_SIZE = 40; // tours per island
+  private static final int ELITE = 2; // best tours copied unchanged into the next generation
+  private static final int TOURNAMENT_SIZE = 3;
+  private static final double MUTATION_RATE = 0.1;
+  private static final int MIGRATION_INTERVAL = 20; // generations between migrations
+  private static final int MIGRANTS = 2; // tours sent to the next island
+  private static final int MAX_GENERATIONS = 1000;
+  private static final int NEIGHBORS = 8; // candidate neighbors per city
+  private static final int DENSE_LIMIT = 2000; // above this no full distance matrix is built
+  private static final long TIME_BUDGET_MS = 2000;
+
+  // metric the search optimizes, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  private int islandCount = Runtime.getRuntime().availableProcessors();
+  private long timeBudgetMillis = TIME_BUDGET_MS;
+  private int maxGenerations = MAX_GENERATIONS;
+  private Long seed = null;
+
+  public GeneticAlgorithm() {
+    this(DistanceMetric.VINCENTY);
+  }
+
+  public GeneticAlgorithm(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  // number of islands, each one evolves on its own thread
+  public void setIslandCount(int islandCount) {
+    this.islandCount = Math.max(1, islandCount);
+  }
+
+  // time for the generations, the first population is always completed
+  public void setTimeBudgetMillis(long timeBudgetMillis) {
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  public void setMaxGenerations(int maxGenerations) {
+    this.maxGenerations = Math.max(0, maxGenerations);
+  }
+
+  /*
+   * fixed seed for the islands, null for a random one. runs that end by
+   * maxGenerations are reproducible, the time budget can cut them off at
+   * different points
+   */
+  public void setSeed(Long seed) {
+    this.seed = seed;
+  }
+
+  /*
+   * reports the best tour of all islands after the first population and after
+   * every migration. on a stop request the islands end their generation, a
+   * population that is not complete yet is filled up with its first tour
+   */
+  @Override
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
+    long startTime = System.nanoTime();
+    long deadline = startTime + timeBudgetMillis * 1_000_000;
+
+    int n = cities.size();
+    int generation = 0;
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+
+    if (n >= 5) {
+      CandidateNeighbors candidates = CandidateNeighbors.build(cities, NEIGHBORS, metric);
+      DistanceMatrix distances = n <= DENSE_LIMIT
+          ? TSPUtils.calculateDistanceMatrix(cities, metric)
+          : candidates;
+      int[] neighbors = LocalSearch.neighborLists(distances, candidates);
+      DistanceMatrix fallback = DistanceMetric.CHORD.prepare(cities);
+
+      SplittableRandom root = seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+      Island[] islands = new Island[islandCount];
+      for (int i = 0; i < islandCount; i++) {
+        islands[i] = new Island(n, distances, neighbors, root.split());
+      }
+      int[] migrants = new int[islandCount * MIGRANTS * n];
+      double[] migrantLengths = new double[islandCount * MIGRANTS];
+
+      ExecutorService executor = Executors.newFixedThreadPool(islandCount);
+      boolean completed = false;
+      try {
+        List<Callable<Void>> initialize = new ArrayList<>();
+        for (Island island : islands) {
+          initialize.add(() -> {
+            island.initialize(fallback, context);
+            return null;
+          });
+        }
+        runAll(executor, initialize);
+        report(islands, context, cities, startTime);
+
+        while (generation < maxGenerations && System.nanoTime() < deadline
+            && !context.shouldStop()) {
+          int steps = Math.min(MIGRATION_INTERVAL, maxGenerations - generation);
+          List<Callable<Void>> evolve = new ArrayList<>();
+          for (Island island : islands) {
+            evolve.add(() -> {
+              island.evolve(steps, deadline, context);
+              return null;
+            });
+          }
+          runAll(executor, evolve);
+          generation += steps;
+          report(islands, context, cities, startTime);
+
+          if (islandCount > 1) {
+            // copy all migrants first, so no tour travels more than one island
+            for (int i = 0; i < islandCount; i++) {
+              islands[i].emigrate(migrants, migrantLengths, i * MIGRANTS);
+            }
+            for (int i = 0; i < islandCount; i++) {
+              islands[(i + 1) % islandCount].immigrate(migrants, migrantLengths, i * MIGRANTS);
+            }
+          }
+        }
+        completed = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        executor.shutdownNow();
+      }
+
+      // an interrupted run keeps the identity order, the islands may still be busy
+      if (completed) {
+        Island best = bestIsland(islands);
+        ArrayTour tour = new ArrayTour(order);
+        tour.load(best.population, best.best() * n);
+        tour.rotate(0);
+      }
+    }
+
+    List<CityInfo> finalPath = new ArrayList<>();
+    for (int index : order) {
+      finalPath.add(cities.get(index));
+    }
+    if (n > 0) {
+      finalPath.add(finalPath.get(0)); // complete the cycle
+    }
+
+    return new TSPResult(finalPath, DistanceCalculator.calculatePathLength(finalPath),
+        System.nanoTime() - startTime, Double.NaN, generation);
+  }
+
+  private static Island bestIsland(Island[] islands) {
+    Island best = islands[0];
+    for (Island island : islands) {
+      if (island.bestLength() < best.bestLength()) {
+        best = island;
+      }
+    }
+    return best;
+  }
+
+  private static void report(Island[] islands, SolveContext context, List<CityInfo> cities,
+      long startTime) {
+    if (context.isDue()) {
+      Island best = bestIsland(islands);
+      int n = best.n;
+      int offset = best.best() * n;
+      context.report(cities, Arrays.copyOfRange(best.population, offset, offset + n), startTime);
+    }
+  }
+
+  // runs the tasks on the island threads and waits for all of them
+  private static void runAll(ExecutorService executor, List<Callable<Void>> tasks)
+      throws InterruptedException {
+    for (Future<Void> future : executor.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+
+  // one population with everything needed to breed it, only used by one thread at a time
+  private static class Island {
+    final int n;
+    final DistanceMatrix distances;
+    final SplittableRandom random;
+
+    // tour i is at [i * n, (i + 1) * n), the next generation is built in offspring
+    int[] population;
+    int[] offspring;
+    double[] lengths;
+    double[] offspringLengths;
+    // indices of the tours already picked by elitism or for migration
+    private final int[] chosen = new int[Math.max(ELITE, MIGRANTS)];
+
+    // parent edges of every city for the crossover, up to 4 per city
+    private final int[] edges;
+    private final int[] degree;
+    private final boolean[] visited;
+    // unvisited cities are the first `remaining` entries, slot[c] is the index of city c
+    private final int[] unvisited;
+    private final int[] slot;
+    private int remaining;
+    // cities next to edges the parents didn't have, the repair starts there
+    private final int[] touched;
+    private int touchedCount;
+
+    private final ArrayTour tour;
+    private final LocalSearch.Search search;
+
+    Island(int n, DistanceMatrix distances, int[] neighbors, SplittableRandom random) {
+      this.n = n;
+      this.distances = distances;
+      this.random = random;
+      this.population = new int[POPULATION_SIZE * n];
+      this.offspring = new int[POPULATION_SIZE * n];
+      this.lengths = new double[POPULATION_SIZE];
+      this.offspringLengths = new double[POPULATION_SIZE];
+      this.edges = new int[4 * n];
+      this.degree = new int[n];
+      this.visited = new boolean[n];
+      this.unvisited = new int[n];
+      this.slot = new int[n];
+      this.touched = new int[2 * n + 4];
+      this.tour = new ArrayTour(new int[n]);
+      this.search = new LocalSearch.Search(tour, distances, neighbors);
+    }
+
+    /*
+     * random greedy tours: nearest neighbor from a random city that now and then
+     * takes the second nearest candidate instead, each one made locally optimal
+     */
+    void initialize(DistanceMatrix fallback, SolveContext context) {
+      int[] candidates = search.neighbors;
+      int k = search.k;
+      search.context = context;
+
+      for (int t = 0; t < POPULATION_SIZE; t++) {
+        int offset = t * n;
+        if (t > 0 && context.shouldStop()) {
+          System.arraycopy(population, 0, population, offset, n);
+          lengths[t] = lengths[0];
+          continue;
+        }
+        resetUnvisited();
+        int current = random.nextInt(n);
+        for (int p = 0; p < n; p++) {
+          if (p > 0) {
+            int previous = current;
+            current = -1;
+            boolean skip = random.nextInt(4) == 0;
+            for (int r = 0; r < k && current < 0; r++) {
+              int c = candidates[previous * k + r];
+              if (!visited[c]) {
+                if (skip) {
+                  skip = false;
+                } else {
+                  current = c;
+                }
+              }
+            }
+            if (current < 0) {
+              double nearest = Double.MAX_VALUE;
+              for (int s = 0; s < remaining; s++) {
+                double d = fallback.get(previous, unvisited[s]);
+                if (d < nearest) {
+                  nearest = d;
+                  current = unvisited[s];
+                }
+              }
+            }
+          }
+          population[offset + p] = current;
+          visit(current);
+        }
+
+        tour.load(population, offset);
+        search.pushAll();
+        lengths[t] = repair(population, offset);
+      }
+    }
+
+    void evolve(int generations, long deadline, SolveContext context) {
+      for (int g = 0; g < generations && System.nanoTime() < deadline && !context.shouldStop();
+          g++) {
+        generation();
+      }
+    }
+
+    private void generation() {
+      // elitism, the best ELITE tours survive unchanged
+      for (int e = 0; e < ELITE; e++) {
+        int best = -1;
+        for (int i = 0; i < POPULATION_SIZE; i++) {
+          if ((best < 0 || lengths[i] < lengths[best]) && !isChosen(i, e)) {
+            best = i;
+          }
+        }
+        System.arraycopy(population, best * n, offspring, e * n, n);
+        offspringLengths[e] = lengths[best];
+        chosen[e] = best;
+      }
+
+      for (int c = ELITE; c < POPULATION_SIZE; c++) {
+        int first = tournament();
+        int second = tournament();
+        int offset = c * n;
+        touchedCount = 0;
+        crossover(first * n, second * n, offset);
+        if (random.nextDouble() < MUTATION_RATE) {
+          mutate(offset);
+        }
+
+        tour.load(offspring, offset);
+        for (int i = 0; i < touchedCount; i++) {
+          search.push(touched[i]);
+        }
+        offspringLengths[c] = repair(offspring, offset);
+      }
+
+      int[] tours = population;
+      population = offspring;
+      offspring = tours;
+      double[] tourLengths = lengths;
+      lengths = offspringLengths;
+      offspringLengths = tourLengths;
+    }
+
+    private boolean isChosen(int index, int count) {
+      for (int e = 0; e < count; e++) {
+        if (chosen[e] == index) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private int tournament() {
+      int best = random.nextInt(POPULATION_SIZE);
+      for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+        int other = random.nextInt(POPULATION_SIZE);
+        if (lengths[other] < lengths[best]) {
+          best = other;
+        }
+      }
+      return best;
+    }
+
+    // edge recombination of the tours at first and second into the offspring at target
+    private void crossover(int first, int second, int target) {
+      for (int c = 0; c < n; c++) {
+        degree[c] = 0;
+      }
+      addEdges(first);
+      addEdges(second);
+      resetUnvisited();
+
+      int current = population[first + random.nextInt(n)];
+      for (int p = 0; p < n; p++) {
+        if (p > 0) {
+          int previous = current;
+          current = -1;
+          // parent edge to the city with the fewest remaining edges
+          int fewest = Integer.MAX_VALUE;
+          for (int e = 0; e < degree[previous]; e++) {
+            int c = edges[4 * previous + e];
+            if (degree[c] < fewest) {
+              fewest = degree[c];
+              current = c;
+            }
+          }
+          if (current < 0) {
+            current = unvisited[random.nextInt(remaining)];
+            touched[touchedCount++] = previous;
+            touched[touchedCount++] = current;
+          }
+        }
+
+        offspring[target + p] = current;
+        visit(current);
+        // visited cities are no option anymore
+        for (int e = 0; e < degree[current]; e++) {
+          removeEdge(edges[4 * current + e], current);
+        }
+      }
+
+      // the closing edge back to the start
+      int last = offspring[target + n - 1];
+      int start = offspring[target];
+      if (!parentEdge(first, last, start) && !parentEdge(second, last, start)) {
+        touched[touchedCount++] = last;
+        touched[touchedCount++] = start;
+      }
+    }
+
+    private void addEdges(int offset) {
+      for (int p = 0; p < n; p++) {
+        int city = population[offset + p];
+        addEdge(city, population[offset + (p + 1 == n ? 0 : p + 1)]);
+        addEdge(city, population[offset + (p == 0 ? n - 1 : p - 1)]);
+      }
+    }
+
+    private void addEdge(int city, int other) {
+      for (int e = 0; e < degree[city]; e++) {
+        if (edges[4 * city + e] == other) {
+          return;
+        }
+      }
+      edges[4 * city + degree[city]++] = other;
+    }
+
+    private void removeEdge(int city, int other) {
+      for (int e = 0; e < degree[city]; e++) {
+        if (edges[4 * city + e] == other) {
+          edges[4 * city + e] = edges[4 * city + --degree[city]];
+          return;
+        }
+      }
+    }
+
+    // whether a and b are neighbors in the parent at offset, the ends of the array included
+    private boolean parentEdge(int offset, int a, int b) {
+      int first = population[offset];
+      int last = population[offset + n - 1];
+      if ((first == a && last == b) || (first == b && last == a)) {
+        return true;
+      }
+      for (int p = 0; p + 1 < n; p++) {
+        int c = population[offset + p];
+        int next = population[offset + p + 1];
+        if ((c == a && next == b) || (c == b && next == a)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // reverses a random part of the tour at offset
+    private void mutate(int offset) {
+      int i = random.nextInt(n);
+      int j = random.nextInt(n);
+      if (i > j) {
+        int tmp = i;
+        i = j;
+        j = tmp;
+      }
+      if (j - i < 2 || j - i > n - 2) {
+        return;
+      }
+      touched[touchedCount++] = offspring[offset + (i == 0 ? n - 1 : i - 1)];
+      touched[touchedCount++] = offspring[offset + i];
+      touched[touchedCount++] = offspring[offset + j];
+      touched[touchedCount++] = offspring[offset + (j + 1 == n ? 0 : j + 1)];
+      for (; i < j; i++, j--) {
+        int tmp = offspring[offset + i];
+        offspring[offset + i] = offspring[offset + j];
+        offspring[offset + j] = tmp;
+      }
+    }
+
+    // local search on the loaded tour, writes it back to the buffer and returns its length
+    private double repair(int[] buffer, int offset) {
+      double length = 0;
+      for (int p = 0; p < n; p++) {
+        length += distances.get(tour.tour[p], tour.tour[p + 1 == n ? 0 : p + 1]);
+      }
+      length -= search.run();
+      System.arraycopy(tour.tour, 0, buffer, offset, n);
+      return length;
+    }
+
+    private void resetUnvisited() {
+      for (int i = 0; i < n; i++) {
+        unvisited[i] = i;
+        slot[i] = i;
+        visited[i] = false;
+      }
+      remaining = n;
+    }
+
+    private void visit(int city) {
+      visited[city] = true;
+      int last = unvisited[--remaining];
+      unvisited[slot[city]] = last;
+      slot[last] = slot[city];
+    }
+
+    int best() {
+      int best = 0;
+      for (int i = 1; i < POPULATION_SIZE; i++) {
+        if (lengths[i] < lengths[best]) {
+          best = i;
+        }
+      }
+      return best;
+    }
+
+    double bestLength() {
+      return lengths[best()];
+    }
+
+    // copies the best MIGRANTS tours into the buffer starting at tour index at
+    void emigrate(int[] buffer, double[] bufferLengths, int at) {
+      for (int m = 0; m < MIGRANTS; m++) {
+        int best = -1;
+        for (int i = 0; i < POPULATION_SIZE; i++) {
+          if ((best < 0 || lengths[i] < lengths[best]) && !isChosen(i, m)) {
+            best = i;
+          }
+        }
+        chosen[m] = best;
+        System.arraycopy(population, best * n, buffer, (at + m) * n, n);
+        bufferLengths[at + m] = lengths[best];
+      }
+    }
+
+    // replaces the worst tours with the migrants in the buffer starting at tour index at
+    void immigrate(int[] buffer, double[] bufferLengths, int at) {
+      for (int m = 0; m < MIGRANTS; m++) {
+        int worst = 0;
+        for (int i = 1; i < POPULATION_SIZE; i++) {
+          if (lengths[i] > lengths[worst]) {
+            worst = i;
+          }
+        }
+        System.arraycopy(buffer, (at + m) * n, population, worst * n, n);
+        lengths[worst] = bufferLengths[at + m];
+      }
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "Genetic Algorithm";
+  }
+}
@@ -0,0 +1,246 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
+import com.tsp.util.TSPUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*
+ * exact solver with the Held-Karp dynamic program. the tour starts in city 0,
+ * the other m = n - 1 cities are the bits of a subset mask:
+ *
+ * cost[S * m + j] = length of the shortest path that starts in city 0, visits
+ *                   exactly the cities in S and ends in j (j in S)
+ * cost[S * m + j] = min over i in S - {j} of cost[(S - {j}) * m + i] + d(i, j)
+ *
+ * a subset only depends on subsets with one city less, so all subsets of the
+ * same size (one layer) are filled in parallel. the predecessor of every entry
+ * is kept to rebuild the tour at the end.
+ *
+ * time O(2^n * n^2) and memory O(2^n * n), but both are known before the
+ * first step, so unlike branch and bound this either finishes in a
+ * predictable time or refuses to start
+ */
+public class HeldKarp implements TSPAlgorithm {
+  private static final int CITY_LIMIT = 27; // m * 2^m entries have to fit in an int index
+  private static final int BYTES_PER_ENTRY = Float.BYTES + Byte.BYTES; // cost + predecessor
+  private static final int CHUNK_SIZE = 1 << 12; // subsets per parallel task
+
+  // metric the search optimizes, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  public HeldKarp() {
+    this(DistanceMetric.VINCENTY);
+  }
+
+  public HeldKarp(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  // bytes of the dp tables for n cities, Long.MAX_VALUE above the city limit
+  public static long requiredMemory(int n) {
+    if (n < 3) {
+      return 0;
+    } else if (n > CITY_LIMIT) {
+      return Long.MAX_VALUE; // the tables cannot be indexed, m << m would overflow too
+    }
+    int m = n - 1;
+    return ((long) m << m) * BYTES_PER_ENTRY;
+  }
+
+  // whether the tables for n cities fit into the heap that is still free
+  public static boolean fitsInMemory(int n) {
+    if (n > CITY_LIMIT) {
+      return false;
+    }
+    Runtime runtime = Runtime.getRuntime();
+    long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    return requiredMemory(n) <= free;
+  }
+
+  /*
+   * the tables only give a tour once they are complete, a stop request
+   * (checked per chunk) ends the run without one, like a refused instance
+   */
+  @Override
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
+    long startTime = System.nanoTime();
+
+    int n = cities.size();
+    if (n < 3) {
+      // only one possible tour
+      List<CityInfo> path = closed(new ArrayList<>(cities));
+      return new TSPResult(path, DistanceCalculator.calculatePathLength(path),
+          System.nanoTime() - startTime);
+    } else if (n > CITY_LIMIT) {
+      System.err.println(String.format("Held-Karp handles at most %d cities, not %d",
+          CITY_LIMIT, n));
+      return new TSPResult(null, 0, 0);
+    } else if (!fitsInMemory(n)) {
+      // the tables would not fit, dont even start
+      System.err.println(String.format("Held-Karp needs %d MB for %d cities, not enough memory",
+          requiredMemory(n) >> 20, n));
+      return new TSPResult(null, 0, 0);
+    }
+
+    DistanceMatrix matrix = TSPUtils.calculateDistanceMatrix(cities, metric);
+    int m = n - 1;
+    float[] distances = new float[n * n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        distances[i * n + j] = (float) matrix.get(i, j);
+      }
+    }
+
+    float[] cost = new float[m << m];
+    byte[] predecessor = new byte[m << m];
+
+    // paths with a single city: straight from the start
+    for (int j = 0; j < m; j++) {
+      cost[(1 << j) * m + j] = distances[j + 1];
+      predecessor[(1 << j) * m + j] = -1;
+    }
+
+    long[][] binomial = binomials(m);
+    for (int size = 2; size <= m; size++) {
+      final int k = size;
+      long count = binomial[m][k];
+      int chunks = (int) ((count + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+      IntStream.range(0, chunks).parallel().forEach(c -> {
+        if (context.shouldStop()) {
+          return;
+        }
+        long from = (long) c * CHUNK_SIZE;
+        long to = Math.min(count, from + CHUNK_SIZE);
+        int subset = unrank(from, k, binomial);
+        for (long r = from; r < to; r++) {
+          fillSubset(subset, m, n, distances, cost, predecessor);
+          subset = nextSubset(subset);
+        }
+      });
+
+      if (context.shouldStop()) {
+        return new TSPResult(null, 0, System.nanoTime() - startTime);
+      }
+    }
+
+    // close the tour back to the start
+    int full = (1 << m) - 1;
+    int last = 0;
+    float best = Float.MAX_VALUE;
+    for (int j = 0; j < m; j++) {
+      float length = cost[full * m + j] + distances[(j + 1) * n];
+      if (length < best) {
+        best = length;
+        last = j;
+      }
+    }
+
+    // walk the predecessors back from the last city
+    int[] tour = new int[n];
+    int subset = full;
+    for (int p = n - 1; p > 0; p--) {
+      tour[p] = last + 1;
+      int previous = predecessor[subset * m + last];
+      subset ^= 1 << last;
+      last = previous;
+    }
+
+    List<CityInfo> finalPath = new ArrayList<>();
+    for (int index : tour) {
+      finalPath.add(cities.get(index));
+    }
+    closed(finalPath);
+
+    // the tables are float, measure the tour again with the full precision
+    double optimum = 0;
+    for (int p = 0; p < n; p++) {
+      optimum += matrix.get(tour[p], tour[(p + 1) % n]);
+    }
+    double pathLength = metric == DistanceMetric.VINCENTY
+        ? optimum
+        : DistanceCalculator.calculatePathLength(finalPath);
+
+    // the tour is optimal, its length in the metric of the tables is also the best lower bound
+    return new TSPResult(finalPath, pathLength, System.nanoTime() - startTime, optimum, 0);
+  }
+
+  // all entries of one subset, the smaller subsets are complete already
+  private static void fillSubset(int subset, int m, int n, float[] distances, float[] cost,
+      byte[] predecessor) {
+    for (int rest = subset; rest != 0; rest &= rest - 1) {
+      int j = Integer.numberOfTrailingZeros(rest);
+      int previous = subset ^ (1 << j);
+      int row = previous * m;
+      int column = j + 1;
+
+      float best = Float.MAX_VALUE;
+      int bestPredecessor = -1;
+      for (int others = previous; others != 0; others &= others - 1) {
+        int i = Integer.numberOfTrailingZeros(others);
+        float length = cost[row + i] + distances[(i + 1) * n + column];
+        if (length < best) {
+          best = length;
+          bestPredecessor = i;
+        }
+      }
+
+      cost[subset * m + j] = best;
+      predecessor[subset * m + j] = (byte) bestPredecessor;
+    }
+  }
+
+  // next larger int with the same number of bits (gosper's hack)
+  private static int nextSubset(int subset) {
+    int lowest = subset & -subset;
+    int ripple = subset + lowest;
+    return ripple == 0 ? 0 : ripple | (((subset ^ ripple) >>> 2) / lowest);
+  }
+
+  /*
+   * the subset of size k at the given rank when all of them are sorted as
+   * ints, which is the order nextSubset walks in. lets every chunk of a layer
+   * start at its own subset
+   */
+  private static int unrank(long rank, int k, long[][] binomial) {
+    int subset = 0;
+    int bit = binomial.length - 1;
+    for (; k > 0; k--) {
+      while (binomial[bit][k] > rank) {
+        bit--;
+      }
+      subset |= 1 << bit;
+      rank -= binomial[bit][k];
+    }
+    return subset;
+  }
+
+  // binomial[a][b] = a choose b
+  private static long[][] binomials(int m) {
+    long[][] binomial = new long[m + 1][m + 1];
+    for (int a = 0; a <= m; a++) {
+      binomial[a][0] = 1;
+      for (int b = 1; b <= a; b++) {
+        binomial[a][b] = binomial[a - 1][b - 1] + (b <= a - 1 ? binomial[a - 1][b] : 0);
+      }
+    }
+    return binomial;
+  }
+
+  private static List<CityInfo> closed(List<CityInfo> path) {
+    if (!path.isEmpty()) {
+      path.add(path.get(0)); // complete the cycle
+    }
+    return path;
+  }
+
+  @Override
+  public String getName() {
+    return "Held-Karp";
+  }
+}
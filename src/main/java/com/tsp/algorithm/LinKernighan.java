@@ -0,0 +1,381 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CandidateNeighbors;
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
+import com.tsp.util.TSPUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/*
+ * iterated Lin-Kernighan.
+ *
+ * an LK move is a chain of 2-opt moves. it starts by removing a tour edge
+ * (t1,t2), adds an edge from t2 to one of its candidate neighbors t3 and
+ * removes the edge (t3,t4) that makes closing the tour with (t4,t1) possible.
+ * t4 then takes the place of t2 and the chain goes on as long as the removed
+ * edges are longer than the added ones. the chain is cut back to the point
+ * where closing the tour gave the largest gain, if there is none the whole
+ * chain is undone. the first step tries several neighbors, the deeper ones
+ * only the best.
+ *
+ * once no city finds an improving move anymore the tour is kicked with a
+ * random double bridge (two neighboring segments swap places, a change 2-opt
+ * moves can't easily undo), LK runs again on the touched cities and the
+ * result is kept if it is not longer, otherwise the journal of the tour
+ * rolls everything back. that repeats until the time budget is used up or
+ * many kicks in a row didn't help
+ */
+public class LinKernighan implements TSPAlgorithm {
+  private static final double EPSILON = 1e-9;
+  private static final int NEIGHBORS = 8; // candidate neighbors per city
+  private static final int MAX_DEPTH = 50; // 2-opt moves per LK move
+  private static final int BREADTH = 5; // alternatives tried for the first added edge
+  private static final int KICK_SEGMENT = 50; // longest segment swapped by a kick
+  private static final int STALL_FACTOR = 10; // stop after n * this kicks without improvement
+  private static final int DENSE_LIMIT = 2000; // above this no full distance matrix is built
+  private static final long TIME_BUDGET_MS = 2000;
+  // above this the start tour follows the space filling curve, a bit longer than the nearest
+  // neighbor tour but it avoids the fallback scans over all unvisited cities
+  private static final int CURVE_SEED_LIMIT = 30_000;
+
+  // metric the search optimizes, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  private long timeBudgetMillis = TIME_BUDGET_MS;
+  private Long seed = null;
+
+  public LinKernighan() {
+    this(DistanceMetric.VINCENTY);
+  }
+
+  public LinKernighan(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  // time for the kicks, the first local optimum is always completed
+  public void setTimeBudgetMillis(long timeBudgetMillis) {
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  // fixed seed for the kicks, null for a random one
+  public void setSeed(Long seed) {
+    this.seed = seed;
+  }
+
+  /*
+   * reports the first local optimum and every kick that makes the tour
+   * shorter. a stop request ends the local search or the kicks right away
+   */
+  @Override
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
+    long startTime = System.nanoTime();
+    long deadline = startTime + timeBudgetMillis * 1_000_000;
+
+    int n = cities.size();
+    long kicks = 0;
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+
+    if (n >= 5) {
+      CandidateNeighbors candidates = CandidateNeighbors.build(cities, NEIGHBORS, metric);
+      DistanceMatrix distances = n <= DENSE_LIMIT
+          ? TSPUtils.calculateDistanceMatrix(cities, metric)
+          : candidates;
+
+      DistanceMatrix chord = DistanceMetric.CHORD.prepare(cities);
+      if (n <= CURVE_SEED_LIMIT) {
+        order = nearestNeighborTour(candidates, chord, 0);
+      } else {
+        order = SpaceFillingCurve.curveOrder(cities);
+        SpaceFillingCurve.orOptSweep(order, chord);
+      }
+      ArrayTour tour = new ArrayTour(order);
+      Search search = new Search(tour, distances, candidates);
+      search.context = context;
+      search.pushAll();
+      search.run();
+      tour.clearJournal();
+      context.report(cities, order, startTime);
+
+      if (n >= 8) {
+        SplittableRandom random = seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+        long stallLimit = (long) STALL_FACTOR * n;
+        long stall = 0;
+
+        while (stall < stallLimit && System.nanoTime() < deadline && !context.shouldStop()) {
+          int mark = tour.mark();
+          kicks++;
+          double change = search.kick(random) - search.run();
+
+          if (change < -EPSILON) {
+            stall = 0;
+            if (context.isDue()) {
+              context.report(cities, order, startTime);
+            }
+          } else {
+            stall++;
+          }
+          // equally long tours are kept, that helps to get off plateaus
+          if (change < EPSILON) {
+            tour.clearJournal();
+          } else {
+            tour.rollback(mark);
+          }
+        }
+      }
+
+      tour.rotate(0);
+    }
+
+    List<CityInfo> finalPath = new ArrayList<>();
+    for (int index : order) {
+      finalPath.add(cities.get(index));
+    }
+    if (n > 0) {
+      finalPath.add(finalPath.get(0)); // complete the cycle
+    }
+
+    return new TSPResult(finalPath, DistanceCalculator.calculatePathLength(finalPath),
+        System.nanoTime() - startTime, Double.NaN, kicks);
+  }
+
+  /*
+   * greedy start tour, the next city is the nearest unvisited candidate
+   * neighbor or, if all of them are visited, the nearest unvisited city by the
+   * cheap chord distance
+   */
+  static int[] nearestNeighborTour(CandidateNeighbors candidates, DistanceMatrix fallback,
+      int start) {
+    int n = candidates.size();
+    int[] tour = new int[n];
+    boolean[] visited = new boolean[n];
+
+    // unvisited cities are the first `remaining` entries, slot[c] is the index of city c
+    int[] unvisited = new int[n];
+    int[] slot = new int[n];
+    for (int i = 0; i < n; i++) {
+      unvisited[i] = i;
+      slot[i] = i;
+    }
+    int remaining = n;
+
+    int current = start;
+    for (int p = 0; p < n; p++) {
+      if (p > 0) {
+        current = -1;
+        for (int r = 0; r < candidates.getK() && current < 0; r++) {
+          if (!visited[candidates.neighbor(tour[p - 1], r)]) {
+            current = candidates.neighbor(tour[p - 1], r);
+          }
+        }
+        if (current < 0) {
+          double nearest = Double.MAX_VALUE;
+          for (int s = 0; s < remaining; s++) {
+            double d = fallback.get(tour[p - 1], unvisited[s]);
+            if (d < nearest) {
+              nearest = d;
+              current = unvisited[s];
+            }
+          }
+        }
+      }
+
+      tour[p] = current;
+      visited[current] = true;
+      int last = unvisited[--remaining];
+      unvisited[slot[current]] = last;
+      slot[last] = slot[current];
+    }
+
+    return tour;
+  }
+
+  // local search with LK moves instead of plain 2-opt, Or-opt stays
+  private static class Search extends LocalSearch.Search {
+    // cities of the current chain: t1, then t3 and t4 of every step
+    private final int[] chain = new int[2 * MAX_DEPTH + 2];
+
+    Search(ArrayTour tour, DistanceMatrix distances, CandidateNeighbors candidates) {
+      super(tour, distances, candidates);
+    }
+
+    @Override
+    double improveCity(int city) {
+      for (int direction = 0; direction < 2; direction++) {
+        int t2 = direction == 0 ? tour.next(city) : tour.previous(city);
+        double gain = lkMove(city, t2);
+        if (gain > 0) {
+          return gain;
+        }
+      }
+      return orOpt(city);
+    }
+
+    private double lkMove(int t1, int t2) {
+      int mark = tour.mark();
+      double removed = d(t1, t2);
+      chain[0] = t1;
+      chain[1] = t2;
+
+      // the first added edge tries several neighbors, in candidate order
+      int tried = 0;
+      for (int r = 0; r < k && tried < BREADTH; r++) {
+        int t3 = neighbors[t2 * k + r];
+        double g1 = removed - d(t2, t3);
+        if (g1 <= EPSILON) {
+          break;
+        }
+        if (t3 == t1 || t3 == tour.next(t2) || t3 == tour.previous(t2)) {
+          continue;
+        }
+        tried++;
+
+        int t4 = tour.next(t1) == t2 ? tour.previous(t3) : tour.next(t3);
+        double gain = chain(t1, t2, t3, t4, g1, mark);
+        if (gain > 0) {
+          return gain;
+        }
+      }
+
+      return 0;
+    }
+
+    /*
+     * does the step t3/t4 and follows the chain greedily from there. keeps the
+     * best closed tour found on the way, or undoes everything back to the mark
+     */
+    private double chain(int t1, int t2, int t3, int t4, double g1, int mark) {
+      double bestGain = EPSILON;
+      int bestMark = -1;
+      int bestDepth = 0;
+      double g = g1;
+      int depth = 0;
+
+      while (true) {
+        // removes (t1,t2) and (t3,t4), adds (t2,t3) and (t4,t1)
+        tour.move(t1, t2, t4, t3);
+        g += d(t3, t4);
+        chain[2 * depth + 2] = t3;
+        chain[2 * depth + 3] = t4;
+        depth++;
+
+        double closed = g - d(t4, t1);
+        if (closed > bestGain) {
+          bestGain = closed;
+          bestMark = tour.mark();
+          bestDepth = depth;
+        }
+
+        if (depth == MAX_DEPTH) {
+          break;
+        }
+
+        // next step from t4, the edge (t1,t4) is removed again
+        t2 = t4;
+        int bestT3 = -1;
+        int bestT4 = -1;
+        double bestG1 = 0;
+        double bestScore = -Double.MAX_VALUE;
+        for (int r = 0; r < k; r++) {
+          int c = neighbors[t2 * k + r];
+          double gc = g - d(t2, c);
+          if (gc <= EPSILON) {
+            break;
+          }
+          if (c == t1 || c == tour.next(t2) || c == tour.previous(t2)) {
+            continue;
+          }
+          int e = tour.next(t1) == t2 ? tour.previous(c) : tour.next(c);
+          // edges added in this move stay
+          if (added(c, e, depth)) {
+            continue;
+          }
+          double score = gc + d(c, e);
+          if (score > bestScore) {
+            bestScore = score;
+            bestT3 = c;
+            bestT4 = e;
+            bestG1 = gc;
+          }
+        }
+
+        if (bestT3 < 0) {
+          break;
+        }
+        t3 = bestT3;
+        t4 = bestT4;
+        g = bestG1;
+      }
+
+      if (bestMark < 0) {
+        tour.rollback(mark);
+        return 0;
+      }
+
+      tour.rollback(bestMark);
+      push(chain[0]);
+      push(chain[1]);
+      for (int i = 2; i < 2 * bestDepth + 2; i++) {
+        push(chain[i]);
+      }
+      return bestGain;
+    }
+
+    // whether (a,b) is one of the edges (t2,t3) added in the first depth steps
+    private boolean added(int a, int b, int depth) {
+      for (int i = 0; i < depth; i++) {
+        int t2 = i == 0 ? chain[1] : chain[2 * i + 1];
+        int t3 = chain[2 * i + 2];
+        if ((t2 == a && t3 == b) || (t2 == b && t3 == a)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /*
+     * double bridge on a random part of the tour: A B C D becomes A C B D with
+     * B and C at most KICK_SEGMENT cities long. done as three 2-opt moves,
+     * returns how much longer the tour got
+     */
+    double kick(SplittableRandom random) {
+      int maxLength = Math.min(KICK_SEGMENT, (n - 2) / 2);
+      int start = random.nextInt(n);
+      int lengthB = 1 + random.nextInt(maxLength);
+      int lengthC = 1 + random.nextInt(maxLength);
+
+      int a = tour.tour[start];
+      int b1 = tour.tour[(start + 1) % n];
+      int b2 = tour.tour[(start + lengthB) % n];
+      int c1 = tour.tour[(start + lengthB + 1) % n];
+      int c2 = tour.tour[(start + lengthB + lengthC) % n];
+      int e = tour.tour[(start + lengthB + lengthC + 1) % n];
+
+      double change = d(a, c1) + d(c2, b1) + d(b2, e) - d(a, b1) - d(b2, c1) - d(c2, e);
+
+      // A C' B' D, then A C B' D, then A C B D
+      tour.move(a, b1, c2, e);
+      tour.move(a, c2, c1, b2);
+      tour.move(c2, b2, b1, e);
+
+      push(a);
+      push(b1);
+      push(b2);
+      push(c1);
+      push(c2);
+      push(e);
+      return change;
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "Lin-Kernighan";
+  }
+}
@@ -0,0 +1,354 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CandidateNeighbors;
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
+import com.tsp.util.TSPUtils;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * local search that improves any tour with 2-opt and Or-opt moves until none
+ * of them helps anymore.
+ *
+ * the tour is an ArrayTour, a 2-opt move reverses the shorter side of the
+ * array. an Or-opt move (move 1-3 consecutive cities somewhere else, maybe
+ * reversed) is done as a sequence of 2-opt moves.
+ *
+ * only moves that connect a city to one of its k nearest cities are tried, and
+ * a city is only looked at again after one of its tour edges changed (don't
+ * look bits, kept as a queue of active cities). one pass over the tour is
+ * therefore about O(n * k) instead of O(n^2)
+ */
+public class LocalSearch {
+  private static final double EPSILON = 1e-9;
+  private static final int DEFAULT_NEIGHBORS = 10;
+  private static final int MAX_SEGMENT = 3; // longest segment moved by Or-opt
+  private static final int DENSE_LIMIT = 2000; // above this no full distance matrix is built
+  private static final int STOP_CHECK_INTERVAL = 256; // cities taken from the queue between checks
+
+  private int neighborCount = DEFAULT_NEIGHBORS;
+
+  // metric the search optimizes, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  public LocalSearch() {
+    this(DistanceMetric.VINCENTY);
+  }
+
+  public LocalSearch(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  // number of nearest cities a city may be connected to by a move
+  public void setNeighborCount(int neighborCount) {
+    this.neighborCount = Math.max(1, neighborCount);
+  }
+
+  /*
+   * improves a path as returned by a TSPAlgorithm (closed or not), the result
+   * is closed and starts with the same city. only the local search is in the
+   * execution time
+   */
+  public TSPResult improve(List<CityInfo> path) {
+    long startTime = System.nanoTime();
+
+    List<CityInfo> cities = new ArrayList<>(path);
+    if (cities.size() > 1 && cities.get(0) == cities.get(cities.size() - 1)) {
+      cities.remove(cities.size() - 1);
+    }
+
+    int n = cities.size();
+    int[] tour = new int[n];
+    for (int i = 0; i < n; i++) {
+      tour[i] = i;
+    }
+
+    if (n >= 5) {
+      CandidateNeighbors candidates = CandidateNeighbors.build(cities, neighborCount, metric);
+      DistanceMatrix distances = n <= DENSE_LIMIT
+          ? TSPUtils.calculateDistanceMatrix(cities, metric)
+          : candidates;
+      optimize(tour, distances, candidates);
+    }
+
+    List<CityInfo> result = new ArrayList<>();
+    for (int index : tour) {
+      result.add(cities.get(index));
+    }
+    if (n > 0) {
+      result.add(result.get(0)); // complete the cycle
+    }
+
+    return new TSPResult(result, DistanceCalculator.calculatePathLength(result),
+        System.nanoTime() - startTime);
+  }
+
+  /*
+   * improves a tour given as city order (without repeating the start city) in
+   * place, the first city stays first. without candidates the neighbor lists
+   * are taken from the matrix. returns the gain
+   */
+  static double optimize(int[] tour, DistanceMatrix distances, CandidateNeighbors candidates) {
+    if (tour.length < 4) {
+      return 0;
+    }
+
+    int start = tour[0];
+    ArrayTour arrayTour = new ArrayTour(tour);
+    Search search = new Search(arrayTour, distances, candidates);
+    search.pushAll();
+    double gain = search.run();
+    arrayTour.rotate(start);
+    return gain;
+  }
+
+  // flat neighbor lists of the candidates, or the k nearest cities by the matrix
+  static int[] neighborLists(DistanceMatrix distances, CandidateNeighbors candidates) {
+    int n = distances.size();
+    if (candidates == null) {
+      return nearestNeighbors(distances, Math.min(DEFAULT_NEIGHBORS, n - 1));
+    }
+
+    int k = candidates.getK();
+    int[] neighbors = new int[n * k];
+    for (int i = 0; i < n; i++) {
+      for (int r = 0; r < k; r++) {
+        neighbors[i * k + r] = candidates.neighbor(i, r);
+      }
+    }
+    return neighbors;
+  }
+
+  // the k nearest cities of every city by the matrix, flat and sorted by distance
+  private static int[] nearestNeighbors(DistanceMatrix distances, int k) {
+    int n = distances.size();
+    int[] neighbors = new int[n * k];
+    double[] best = new double[k];
+
+    for (int i = 0; i < n; i++) {
+      int offset = i * k;
+      int count = 0;
+      for (int j = 0; j < n; j++) {
+        if (j == i) {
+          continue;
+        }
+        double d = distances.get(i, j);
+        if (count == k && d >= best[k - 1]) {
+          continue;
+        }
+        // insertion into the sorted list
+        int r = count < k ? count++ : k - 1;
+        while (r > 0 && best[r - 1] > d) {
+          best[r] = best[r - 1];
+          neighbors[offset + r] = neighbors[offset + r - 1];
+          r--;
+        }
+        best[r] = d;
+        neighbors[offset + r] = j;
+      }
+    }
+
+    return neighbors;
+  }
+
+  /*
+   * state of one run on a tour. other solvers extend it and replace
+   * improveCity with their own moves
+   */
+  static class Search {
+    final int n;
+    final int k;
+    final ArrayTour tour;
+    final int[] neighbors;
+    final DistanceMatrix distances;
+
+    // run() stops early when this says so, the tour is valid after every move
+    SolveContext context;
+
+    // cities whose don't look bit is off, in a ring buffer
+    private final int[] queue;
+    private final boolean[] queued;
+    private int head;
+    private int size;
+
+    Search(ArrayTour tour, DistanceMatrix distances, CandidateNeighbors candidates) {
+      this(tour, distances, neighborLists(distances, candidates));
+    }
+
+    // with neighbor lists from neighborLists(), they can be shared between searches
+    Search(ArrayTour tour, DistanceMatrix distances, int[] neighbors) {
+      this.n = tour.n;
+      this.tour = tour;
+      this.distances = distances;
+      this.neighbors = neighbors;
+      this.k = neighbors.length / n;
+      this.queue = new int[n];
+      this.queued = new boolean[n];
+    }
+
+    // every city in tour order
+    void pushAll() {
+      for (int p = 0; p < n; p++) {
+        push(tour.tour[p]);
+      }
+    }
+
+    void push(int city) {
+      if (!queued[city]) {
+        queued[city] = true;
+        queue[(head + size) % n] = city;
+        size++;
+      }
+    }
+
+    // works through the queue until no city finds an improvement, returns the gain
+    double run() {
+      double gain = 0;
+      int taken = 0;
+
+      while (size > 0) {
+        if (context != null && ++taken % STOP_CHECK_INTERVAL == 0 && context.shouldStop()) {
+          break;
+        }
+        int city = queue[head];
+        head = (head + 1) % n;
+        size--;
+        queued[city] = false;
+
+        // keep working on the city while it finds improvements
+        double improvement;
+        while ((improvement = improveCity(city)) > 0) {
+          gain += improvement;
+        }
+      }
+
+      return gain;
+    }
+
+    double improveCity(int city) {
+      double gain = twoOpt(city);
+      return gain > 0 ? gain : orOpt(city);
+    }
+
+    double d(int a, int b) {
+      return distances.get(a, b);
+    }
+
+    // first improving 2-opt move that adds an edge from a to one of its neighbors
+    double twoOpt(int a) {
+      for (int direction = 0; direction < 2; direction++) {
+        int b = direction == 0 ? tour.next(a) : tour.previous(a);
+        double removed = d(a, b);
+
+        for (int r = 0; r < k; r++) {
+          int c = neighbors[a * k + r];
+          double g1 = removed - d(a, c);
+          // neighbors are sorted, no later one can give a shorter new edge
+          if (g1 <= EPSILON) {
+            break;
+          }
+
+          int e = direction == 0 ? tour.next(c) : tour.previous(c);
+          if (c == b || e == a) {
+            continue;
+          }
+
+          double gain = g1 + d(c, e) - d(b, e);
+          if (gain > EPSILON) {
+            tour.move(a, b, c, e);
+            push(a);
+            push(b);
+            push(c);
+            push(e);
+            return gain;
+          }
+        }
+      }
+      return 0;
+    }
+
+    /*
+     * moves a segment of up to MAX_SEGMENT cities that starts or ends in a
+     * between two neighboring cities of its ends
+     */
+    double orOpt(int a) {
+      for (int length = 1; length <= MAX_SEGMENT && length < n - 2; length++) {
+        for (int direction = 0; direction < 2; direction++) {
+          // the segment is s1..s2 in tour direction
+          int s1 = a;
+          int s2 = a;
+          for (int i = 1; i < length; i++) {
+            if (direction == 0) {
+              s2 = tour.next(s2);
+            } else {
+              s1 = tour.previous(s1);
+            }
+          }
+          int p = tour.previous(s1);
+          int nx = tour.next(s2);
+          double removeGain = d(p, s1) + d(s2, nx) - d(p, nx);
+          if (removeGain <= EPSILON) {
+            continue;
+          }
+
+          for (int end = 0; end < 2; end++) {
+            int s = end == 0 ? s1 : s2;
+            for (int r = 0; r < k; r++) {
+              int c = neighbors[s * k + r];
+              if (removeGain - d(s, c) <= EPSILON) {
+                break;
+              }
+              if (tour.inSegment(c, s1, length)) {
+                continue;
+              }
+
+              // insert next to c, on either side of it
+              for (int side = 0; side < 2; side++) {
+                int x = side == 0 ? c : tour.previous(c);
+                int y = side == 0 ? tour.next(c) : c;
+                // next to p it is the same as moving p, found from there
+                if (x == p || y == p
+                    || tour.inSegment(x, s1, length) || tour.inSegment(y, s1, length)) {
+                  continue;
+                }
+
+                double removed = d(x, y);
+                double forward = d(x, s1) + d(s2, y) - removed;
+                double reversed = d(x, s2) + d(s1, y) - removed;
+                double gain = removeGain - Math.min(forward, reversed);
+                if (gain > EPSILON) {
+                  moveSegment(s1, s2, p, nx, x, y, reversed < forward);
+                  push(p);
+                  push(nx);
+                  push(s1);
+                  push(s2);
+                  push(x);
+                  push(y);
+                  return gain;
+                }
+              }
+            }
+          }
+        }
+      }
+      return 0;
+    }
+
+    /*
+     * p s1..s2 nx ... x y becomes p nx ... x s1..s2 y (or s2..s1). first
+     * p-x and s1-y, then p-nx and x-s2, then the segment is turned around
+     */
+    private void moveSegment(int s1, int s2, int p, int nx, int x, int y, boolean reversed) {
+      tour.move(p, s1, x, y);
+      if (x != nx) {
+        tour.move(p, x, nx, s2);
+      }
+      if (!reversed) {
+        tour.move(x, s2, s1, y);
+      }
+    }
+  }
+}
@@ -1,92 +1,121 @@
 package com.tsp.algorithm;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import com.tsp.util.CityData.CityInfo;
-import com.tsp.util.DistanceCalculator;
 import com.tsp.util.ContinentsData;
 import com.tsp.util.ContinentsData.ContinentInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
 
 public class NearestNeighbor implements TSPAlgorithm {
-  private double pathLength;
-  private long executionTime;
-  private ContinentsData continentsData = new ContinentsData("/data/continents.csv");
+  private final ContinentsData continentsData = ContinentsData.getShared();
 
   // costs for different transitions
-  private static final double SAME_COUNTRY_COST = 0.0;
-  private static final double SAME_SUBREGION_COST = 1.0;
-  private static final double SAME_CONTINENT_COST = 2.0;
-  private static final double DIFFERENT_CONTINENT_COST = 3.0;
+  private static final int SAME_COUNTRY_COST = 0;
+  private static final int SAME_SUBREGION_COST = 1;
+  private static final int SAME_CONTINENT_COST = 2;
+  private static final int DIFFERENT_CONTINENT_COST = 3;
 
+  // on a stop request the remaining cities are appended in no particular order
   @Override
-  public List<CityInfo> findPath(List<CityInfo> cities) {
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
     long startTime = System.nanoTime();
 
     if (cities.isEmpty()) {
-      return new ArrayList<>();
+      return new TSPResult(new ArrayList<>(), 0, System.nanoTime() - startTime);
+    }
+
+    /*
+     * look up the regions once per city instead of once per pair. cities
+     * without known country get ids nobody else has, so they only ever match
+     * the different continent cost, like before
+     */
+    int n = cities.size();
+    int[] country = new int[n];
+    int[] subRegion = new int[n];
+    int[] continent = new int[n];
+    for (int i = 0; i < n; i++) {
+      ContinentInfo info = continentsData.getContinentInfo(cities.get(i).getIso2Code());
+      country[i] = info != null ? info.getCountryId() : -1 - i;
+      subRegion[i] = info != null ? info.getSubRegionId() : -1 - i;
+      continent[i] = info != null ? info.getContinentId() : -1 - i;
+    }
+
+    /*
+     * ties within a region level go to the closest city. the chord ranks
+     * cities like the great circle and is computed on demand from unit
+     * vectors, no matrix is built. the path length is vincenty
+     */
+    DistanceMatrix distances = DistanceMetric.CHORD.prepare(cities);
+
+    // unvisited cities are the first `remaining` entries, a visited one is swapped to the end
+    int[] unvisited = new int[n];
+    for (int i = 0; i < n; i++) {
+      unvisited[i] = i;
     }
 
     List<CityInfo> path = new ArrayList<>();
-    Set<CityInfo> unvisitedCities = new HashSet<>(cities);
 
     // start with first city
-    CityInfo currentCity = cities.get(0);
-    path.add(currentCity);
-    unvisitedCities.remove(currentCity);
+    int current = 0;
+    path.add(cities.get(current));
+    unvisited[0] = unvisited[n - 1];
+    int remaining = n - 1;
 
     // find path until all cities are visited
-    while (!unvisitedCities.isEmpty()) {
-      CityInfo nextCity = findNearestCity(currentCity, unvisitedCities);
-      path.add(nextCity);
-      unvisitedCities.remove(nextCity);
-      currentCity = nextCity;
+    boolean stopped = false;
+    while (remaining > 0) {
+      int bestSlot = -1;
+      int bestCost = Integer.MAX_VALUE;
+      double bestDistance = Double.MAX_VALUE;
+
+      stopped = stopped || context.shouldStop();
+      if (stopped) {
+        bestSlot = remaining - 1;
+      }
+
+      for (int slot = 0; slot < remaining && !stopped; slot++) {
+        int candidate = unvisited[slot];
+        int cost = transitionCost(current, candidate, country, subRegion, continent);
+        if (cost > bestCost) {
+          continue;
+        }
+
+        double distance = distances.get(current, candidate);
+        if (cost < bestCost || distance < bestDistance) {
+          bestSlot = slot;
+          bestCost = cost;
+          bestDistance = distance;
+        }
+      }
+
+      current = unvisited[bestSlot];
+      unvisited[bestSlot] = unvisited[--remaining];
+      path.add(cities.get(current));
     }
 
     // return to start
     path.add(cities.get(0));
+    double length = DistanceCalculator.calculatePathLength(path);
 
-    pathLength = DistanceCalculator.calculatePathLength(path);
-    executionTime = System.nanoTime() - startTime;
-    return path;
-  }
-
-  private CityInfo findNearestCity(CityInfo current, Set<CityInfo> unvisitedCities) {
-    CityInfo nearest = null;
-    double bestRegionLevel = Double.MAX_VALUE;
-
-    for (CityInfo candidate : unvisitedCities) {
-      double transitionCost = calculateTransitionCost(current, candidate);
-
-      if (transitionCost < bestRegionLevel) {
-        bestRegionLevel = transitionCost;
-        nearest = candidate;
-      }
-    }
-
-    return nearest;
+    return new TSPResult(path, length, System.nanoTime() - startTime);
   }
 
-  private double calculateTransitionCost(CityInfo city1, CityInfo city2) {
-    ContinentInfo info1 = continentsData.getContinentInfo(city1.getIso2Code());
-    ContinentInfo info2 = continentsData.getContinentInfo(city2.getIso2Code());
-
-    if (info1 == null || info2 == null) {
-      return DIFFERENT_CONTINENT_COST;
-    }
-
+  private static int transitionCost(int city1, int city2, int[] country, int[] subRegion,
+      int[] continent) {
     // check hierarchy from specific to general
-    if (info1.getCountry().equals(info2.getCountry())) {
+    if (country[city1] == country[city2]) {
       return SAME_COUNTRY_COST;
     }
 
-    if (info1.getSubRegion().equals(info2.getSubRegion())) {
+    if (subRegion[city1] == subRegion[city2]) {
       return SAME_SUBREGION_COST;
     }
 
-    if (info1.getContinent().equals(info2.getContinent())) {
+    if (continent[city1] == continent[city2]) {
       return SAME_CONTINENT_COST;
     }
 
@@ -97,14 +126,4 @@ public class NearestNeighbor implements TSPAlgorithm {
   public String getName() {
     return "Modified Nearest Neighbor";
   }
-
-  @Override
-  public double getPathLength() {
-    return pathLength;
-  }
-
-  @Override
-  public long getExecutionTime() {
-    return executionTime;
-  }
 }
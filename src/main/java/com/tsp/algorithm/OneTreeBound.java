@@ -0,0 +1,212 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.DistanceMatrix;
+import java.util.Arrays;
+
+/*
+ * Held-Karp lower bounds for partial tours.
+ *
+ * every city i gets a penalty pi_i and all distances are replaced by
+ * w(i,j) = d(i,j) + pi_i + pi_j. a tour visits every city twice, so its length
+ * under w is the real length + 2 * sum(pi) and any lower bound under w minus
+ * 2 * sum(pi) is a lower bound for the real tour. the penalties are chosen once
+ * at the root with subgradient optimization so that the minimum 1-tree (a
+ * spanning tree on cities 1..n-1 plus the two cheapest edges of city 0) looks
+ * as much like a tour as possible, which makes the bound much tighter than the
+ * plain cheapest edges.
+ *
+ * for a partial tour 0 -> ... -> last with unvisited cities U, the rest of the
+ * tour is a path last -> U -> 0. without its two end edges that path spans U,
+ * so it is at least as long as the minimum spanning tree of U:
+ *
+ * bound = cost + MST_w(U) + min_u w(last,u) + min_u w(0,u)
+ *         - 2 * sum_U(pi) - pi_last - pi_0
+ */
+class OneTreeBound {
+  private static final double EPSILON = 1e-9;
+
+  private final int n;
+  private final double[] weights; // w(i,j) at i * n + j
+  private final double[] pi;
+
+  private OneTreeBound(int n, double[] weights, double[] pi) {
+    this.n = n;
+    this.weights = weights;
+    this.pi = pi;
+  }
+
+  // penalties from subgradient optimization, upperBound is the length of any known tour
+  static OneTreeBound compute(DistanceMatrix distances, double upperBound) {
+    int n = distances.size();
+    double[] pi = new double[n];
+
+    if (n >= 3) {
+      double[] bestPi = pi.clone();
+      double bestBound = -Double.MAX_VALUE;
+      double lambda = 2.0;
+      int sinceImprovement = 0;
+      int[] degree = new int[n];
+
+      for (int iteration = 0; iteration < 100 * n && lambda > 1e-6; iteration++) {
+        double bound = oneTree(distances, pi, degree);
+        if (bound > bestBound + EPSILON) {
+          bestBound = bound;
+          bestPi = pi.clone();
+          sinceImprovement = 0;
+        } else if (++sinceImprovement >= n) {
+          lambda /= 2;
+          sinceImprovement = 0;
+        }
+
+        double norm = 0;
+        for (int i = 0; i < n; i++) {
+          norm += (degree[i] - 2) * (degree[i] - 2);
+        }
+        // every degree is 2: the 1-tree is a tour and the bound is exact
+        if (norm == 0) {
+          break;
+        }
+
+        double step = lambda * Math.max(upperBound - bound, EPSILON * upperBound) / norm;
+        for (int i = 0; i < n; i++) {
+          pi[i] += step * (degree[i] - 2);
+        }
+      }
+      pi = bestPi;
+    }
+
+    double[] weights = new double[n * n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        weights[i * n + j] = i == j ? 0 : distances.get(i, j) + pi[i] + pi[j];
+      }
+    }
+
+    return new OneTreeBound(n, weights, pi);
+  }
+
+  // length of the minimum 1-tree under the penalties minus 2 * sum(pi), fills the degrees
+  private static double oneTree(DistanceMatrix distances, double[] pi, int[] degree) {
+    int n = distances.size();
+    Arrays.fill(degree, 0);
+
+    // prim on the cities 1..n-1
+    double[] key = new double[n];
+    int[] parent = new int[n];
+    boolean[] inTree = new boolean[n];
+    Arrays.fill(key, Double.MAX_VALUE);
+    key[1] = 0;
+    parent[1] = -1;
+    double length = 0;
+
+    for (int step = 1; step < n; step++) {
+      int next = -1;
+      for (int v = 1; v < n; v++) {
+        if (!inTree[v] && (next < 0 || key[v] < key[next])) {
+          next = v;
+        }
+      }
+      inTree[next] = true;
+      length += key[next];
+      if (parent[next] >= 0) {
+        degree[next]++;
+        degree[parent[next]]++;
+      }
+      for (int v = 1; v < n; v++) {
+        if (!inTree[v]) {
+          double w = distances.get(next, v) + pi[next] + pi[v];
+          if (w < key[v]) {
+            key[v] = w;
+            parent[v] = next;
+          }
+        }
+      }
+    }
+
+    // two cheapest edges of city 0
+    int first = -1;
+    int second = -1;
+    double firstWeight = Double.MAX_VALUE;
+    double secondWeight = Double.MAX_VALUE;
+    for (int v = 1; v < n; v++) {
+      double w = distances.get(0, v) + pi[0] + pi[v];
+      if (w < firstWeight) {
+        second = first;
+        secondWeight = firstWeight;
+        first = v;
+        firstWeight = w;
+      } else if (w < secondWeight) {
+        second = v;
+        secondWeight = w;
+      }
+    }
+    length += firstWeight + secondWeight;
+    degree[0] = 2;
+    degree[first]++;
+    degree[second]++;
+
+    double sumPi = 0;
+    for (double p : pi) {
+      sumPi += p;
+    }
+    return length - 2 * sumPi;
+  }
+
+  /*
+   * lower bound for every tour that starts with a path of the given cost from
+   * city 0 through the visited cities (bit i set = city i visited) to last
+   */
+  double bound(long visited, int last, double cost, DistanceMatrix distances) {
+    long unvisited = ~visited & (n == 64 ? -1L : (1L << n) - 1);
+    if (unvisited == 0) {
+      return cost + distances.get(last, 0);
+    }
+
+    int count = Long.bitCount(unvisited);
+    int[] cities = new int[count];
+    double penalties = 0;
+    double toLast = Double.MAX_VALUE;
+    double toStart = Double.MAX_VALUE;
+    for (int c = 0; c < count; c++) {
+      int city = Long.numberOfTrailingZeros(unvisited);
+      unvisited &= unvisited - 1;
+      cities[c] = city;
+      penalties += pi[city];
+      toLast = Math.min(toLast, weights[last * n + city]);
+      toStart = Math.min(toStart, weights[city]);
+    }
+
+    return cost + spanningTree(cities) + toLast + toStart
+        - 2 * penalties - pi[last] - pi[0];
+  }
+
+  // prim over the given cities with the penalized weights
+  private double spanningTree(int[] cities) {
+    int count = cities.length;
+    double[] key = new double[count];
+    boolean[] inTree = new boolean[count];
+    Arrays.fill(key, Double.MAX_VALUE);
+    key[0] = 0;
+    double length = 0;
+
+    for (int step = 0; step < count; step++) {
+      int next = -1;
+      for (int v = 0; v < count; v++) {
+        if (!inTree[v] && (next < 0 || key[v] < key[next])) {
+          next = v;
+        }
+      }
+      inTree[next] = true;
+      length += key[next];
+
+      int row = cities[next] * n;
+      for (int v = 0; v < count; v++) {
+        if (!inTree[v]) {
+          key[v] = Math.min(key[v], weights[row + cities[v]]);
+        }
+      }
+    }
+
+    return length;
+  }
+}
@@ -0,0 +1,252 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * bounded LRU cache for solver results, keyed by the set of cities and a
+ * string with the algorithm and its parameters.
+ *
+ * the key is order independent: the cities are sorted by their coordinates
+ * and the sorted coordinates are the fingerprint, so the same set entered in
+ * another order, or a city removed and added again as a new CityInfo, still
+ * hits. the tour is stored as positions in that sorted order and mapped back
+ * to the cities of the lookup, starting with their first city like a fresh
+ * result would.
+ *
+ * the size of an entry is estimated from its city count, the least recently
+ * used entries are evicted once the estimate of all entries is above the cap
+ */
+public class ResultCache {
+  private static final long ENTRY_OVERHEAD_BYTES = 256; // map entry, key, result and arrays
+  private static final long BYTES_PER_CITY = 20; // two coordinates in the key, a tour position
+
+  private final long maxBytes;
+  private long bytes;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  // access order for LRU
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private static final class Key {
+    final double[] coordinates; // latitude and longitude of the sorted cities
+    final String parameters;
+    final int hash;
+
+    Key(double[] coordinates, String parameters) {
+      this.coordinates = coordinates;
+      this.parameters = parameters;
+      this.hash = 31 * Arrays.hashCode(coordinates) + parameters.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key key)) {
+        return false;
+      }
+      return hash == key.hash && parameters.equals(key.parameters)
+          && Arrays.equals(coordinates, key.coordinates);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Entry {
+    final int[] tour; // positions in the sorted order
+    final TSPResult result;
+
+    Entry(int[] tour, TSPResult result) {
+      this.tour = tour;
+      this.result = result;
+    }
+
+    long bytes() {
+      return ENTRY_OVERHEAD_BYTES + BYTES_PER_CITY * tour.length;
+    }
+  }
+
+  public ResultCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /*
+   * the cached result for the cities and parameters, or null. the path
+   * consists of the given CityInfo objects and starts with the first of them
+   */
+  public TSPResult get(List<CityInfo> cities, String parameters) {
+    int[] sorted = sortedIndices(cities);
+    Key key = new Key(coordinates(cities, sorted), parameters);
+
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(key);
+    }
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+
+    TSPResult result = entry.result;
+    if (entry.tour.length == 0) {
+      return result;
+    }
+
+    // the position of the first city decides where the path starts
+    int n = entry.tour.length;
+    int start = 0;
+    while (sorted[entry.tour[start]] != 0) {
+      start++;
+    }
+    List<CityInfo> path = new ArrayList<>(n + 1);
+    for (int p = 0; p < n; p++) {
+      path.add(cities.get(sorted[entry.tour[(p + start) % n]]));
+    }
+    path.add(path.get(0)); // complete the cycle
+
+    return new TSPResult(path, result.getPathLength(), result.getExecutionTime(),
+        result.getLowerBound(), result.getIterations());
+  }
+
+  /*
+   * stores a result for the cities it was solved for, replaces an older one.
+   * results without a path are not stored, the reason an algorithm gave up
+   * (free memory for Held-Karp, a stop request) may be gone the next time
+   */
+  public void put(List<CityInfo> cities, String parameters, TSPResult result) {
+    List<CityInfo> path = result.getPath();
+    if (path == null) {
+      return;
+    }
+    int[] sorted = sortedIndices(cities);
+    Key key = new Key(coordinates(cities, sorted), parameters);
+
+    // position of every city in the sorted order, by identity
+    Map<CityInfo, Integer> positions = new IdentityHashMap<>();
+    for (int s = 0; s < sorted.length; s++) {
+      positions.put(cities.get(sorted[s]), s);
+    }
+    int n = path.size() > 1 && path.get(0) == path.get(path.size() - 1)
+        ? path.size() - 1
+        : path.size();
+    if (n != cities.size()) {
+      return; // not a tour of these cities
+    }
+    int[] tour = new int[n];
+    for (int p = 0; p < n; p++) {
+      Integer position = positions.get(path.get(p));
+      if (position == null) {
+        return;
+      }
+      tour[p] = position;
+    }
+    Entry entry = new Entry(tour, result);
+
+    synchronized (this) {
+      Entry previous = entries.put(key, entry);
+      if (previous != null) {
+        bytes -= previous.bytes();
+      }
+      bytes += entry.bytes();
+
+      // least recently used first
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (bytes > maxBytes && iterator.hasNext()) {
+        Entry eldest = iterator.next();
+        iterator.remove();
+        bytes -= eldest.bytes();
+        evictions.increment();
+      }
+    }
+  }
+
+  // city indices sorted by latitude, then longitude
+  private static int[] sortedIndices(List<CityInfo> cities) {
+    int n = cities.size();
+    Integer[] indices = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      indices[i] = i;
+    }
+    Arrays.sort(indices, (a, b) -> {
+      CityInfo city1 = cities.get(a);
+      CityInfo city2 = cities.get(b);
+      int order = Double.compare(city1.getLatitude(), city2.getLatitude());
+      return order != 0 ? order : Double.compare(city1.getLongitude(), city2.getLongitude());
+    });
+
+    int[] sorted = new int[n];
+    for (int s = 0; s < n; s++) {
+      sorted[s] = indices[s];
+    }
+    return sorted;
+  }
+
+  private static double[] coordinates(List<CityInfo> cities, int[] sorted) {
+    double[] coordinates = new double[2 * sorted.length];
+    for (int s = 0; s < sorted.length; s++) {
+      CityInfo city = cities.get(sorted[s]);
+      coordinates[2 * s] = city.getLatitude();
+      coordinates[2 * s + 1] = city.getLongitude();
+    }
+    return coordinates;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  // estimated size of all entries
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public double getHitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d results, %.1f/%.1f MB, %d hits, %d misses (%.1f%%), %d evictions",
+        size(), getBytes() / 1e6, maxBytes / 1e6, getHits(), getMisses(), getHitRate() * 100,
+        getEvictions());
+  }
+}
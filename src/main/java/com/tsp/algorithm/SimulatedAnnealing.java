@@ -0,0 +1,322 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CandidateNeighbors;
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
+import com.tsp.util.TSPUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * multi-start simulated annealing.
+ *
+ * every chain starts from a nearest neighbor tour beginning at a random city
+ * and runs on its own thread. a move is a random 2-opt move that connects a
+ * city to one of its nearest cities, its length change only needs the four
+ * edges involved. shorter tours are always accepted, longer ones with
+ * probability exp(-change / temperature). the temperature falls from a start
+ * value (an average uphill move is accepted half of the time) to a small
+ * fraction of it along the cooling schedule, over a fixed number of moves per
+ * city, so a seeded run gives the same tour every time as long as it ends
+ * before the time budget.
+ *
+ * the best tour of a chain is only copied when the chain is about to leave it
+ * by a longer move, and it is polished with 2-opt and Or-opt at the end. the
+ * result is the best tour of all chains
+ */
+public class SimulatedAnnealing implements TSPAlgorithm {
+  private static final double EPSILON = 1e-9;
+  private static final int NEIGHBORS = 10; // candidate neighbors per city
+  private static final int MOVES_PER_CITY = 10_000; // moves of a chain, times the city count
+  private static final int SAMPLE_MOVES = 1000; // uphill moves sampled for the start temperature
+  private static final double START_ACCEPTANCE = 0.5; // chance to accept an average uphill move at the start
+  private static final double END_RATIO = 1e-3; // end temperature relative to the start temperature
+  private static final double MAX_EXPONENT = 30; // longer moves are rejected without exp()
+  private static final int DENSE_LIMIT = 2000; // above this no full distance matrix is built
+  private static final long TIME_BUDGET_MS = 2000;
+
+  // how the temperature falls from start to end, progress goes from 0 to 1
+  public enum CoolingSchedule {
+    GEOMETRIC {
+      @Override
+      double temperature(double start, double end, double progress) {
+        return start * Math.pow(end / start, progress);
+      }
+    },
+    LINEAR {
+      @Override
+      double temperature(double start, double end, double progress) {
+        return start + (end - start) * progress;
+      }
+    },
+    // lundy and mees, t / (1 + beta t) per step, fast at first and slow at the end
+    LUNDY_MEES {
+      @Override
+      double temperature(double start, double end, double progress) {
+        return start / (1 + (start / end - 1) * progress);
+      }
+    };
+
+    abstract double temperature(double start, double end, double progress);
+  }
+
+  // metric the search optimizes, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  private int chainCount = Runtime.getRuntime().availableProcessors();
+  private CoolingSchedule coolingSchedule = CoolingSchedule.GEOMETRIC;
+  private int movesPerCity = MOVES_PER_CITY;
+  private long timeBudgetMillis = TIME_BUDGET_MS;
+  private Long seed = null;
+
+  public SimulatedAnnealing() {
+    this(DistanceMetric.VINCENTY);
+  }
+
+  public SimulatedAnnealing(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  // number of independent chains, each one runs on its own thread
+  public void setChainCount(int chainCount) {
+    this.chainCount = Math.max(1, chainCount);
+  }
+
+  public void setCoolingSchedule(CoolingSchedule coolingSchedule) {
+    this.coolingSchedule = coolingSchedule;
+  }
+
+  // length of a chain, the schedule reaches the end temperature after n * this moves
+  public void setMovesPerCity(int movesPerCity) {
+    this.movesPerCity = Math.max(1, movesPerCity);
+  }
+
+  // chains that are not done by then stop and report their best tour so far
+  public void setTimeBudgetMillis(long timeBudgetMillis) {
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  // fixed seed for the chains, null for a random one
+  public void setSeed(Long seed) {
+    this.seed = seed;
+  }
+
+  /*
+   * every chain reports its current tour once per n moves when it is shorter
+   * than the last report, and stops there on a stop request
+   */
+  @Override
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
+    long startTime = System.nanoTime();
+    long deadline = startTime + timeBudgetMillis * 1_000_000;
+
+    int n = cities.size();
+    long iterations = 0;
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+
+    if (n >= 5) {
+      CandidateNeighbors candidates = CandidateNeighbors.build(cities, NEIGHBORS, metric);
+      DistanceMatrix distances = n <= DENSE_LIMIT
+          ? TSPUtils.calculateDistanceMatrix(cities, metric)
+          : candidates;
+      int[] neighbors = LocalSearch.neighborLists(distances, candidates);
+      DistanceMatrix fallback = DistanceMetric.CHORD.prepare(cities);
+
+      SplittableRandom root = seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+      List<Chain> chains = new ArrayList<>();
+      for (int i = 0; i < chainCount; i++) {
+        SplittableRandom random = root.split();
+        int[] start = LinKernighan.nearestNeighborTour(candidates, fallback, random.nextInt(n));
+        chains.add(new Chain(start, distances, neighbors, random));
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(chainCount);
+      boolean completed = false;
+      try {
+        long moves = (long) movesPerCity * n;
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (Chain chain : chains) {
+          tasks.add(() -> chain.anneal(moves, deadline, context, cities, startTime));
+        }
+        for (Future<Double> future : executor.invokeAll(tasks)) {
+          future.get();
+        }
+        completed = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+
+      // an interrupted run keeps the identity order, the chains may still be busy
+      if (completed) {
+        Chain best = chains.get(0);
+        for (Chain chain : chains) {
+          if (chain.bestLength < best.bestLength - EPSILON) {
+            best = chain;
+          }
+        }
+        for (Chain chain : chains) {
+          iterations += chain.performed;
+        }
+        ArrayTour tour = new ArrayTour(order);
+        tour.load(best.best, 0);
+        tour.rotate(0);
+      }
+    }
+
+    List<CityInfo> finalPath = new ArrayList<>();
+    for (int index : order) {
+      finalPath.add(cities.get(index));
+    }
+    if (n > 0) {
+      finalPath.add(finalPath.get(0)); // complete the cycle
+    }
+
+    return new TSPResult(finalPath, DistanceCalculator.calculatePathLength(finalPath),
+        System.nanoTime() - startTime, Double.NaN, iterations);
+  }
+
+  // one annealing run, all arrays are allocated before it starts
+  private class Chain {
+    final int n;
+    final int k;
+    final ArrayTour tour;
+    final int[] neighbors;
+    final DistanceMatrix distances;
+    final SplittableRandom random;
+    final LocalSearch.Search search;
+
+    // best tour seen, copied lazily
+    final int[] best;
+    double bestLength;
+    long performed; // moves tried before the chain stopped
+
+    Chain(int[] start, DistanceMatrix distances, int[] neighbors, SplittableRandom random) {
+      this.n = start.length;
+      this.tour = new ArrayTour(start);
+      this.neighbors = neighbors;
+      this.k = neighbors.length / n;
+      this.distances = distances;
+      this.random = random;
+      this.search = new LocalSearch.Search(tour, distances, neighbors);
+      this.best = start.clone();
+    }
+
+    // runs the schedule over the given number of moves, returns the best length
+    double anneal(long moves, long deadline, SolveContext context, List<CityInfo> cities,
+        long startTime) {
+      double length = 0;
+      for (int p = 0; p < n; p++) {
+        length += d(tour.tour[p], tour.tour[p + 1 == n ? 0 : p + 1]);
+      }
+      bestLength = length;
+
+      double startTemperature = startTemperature();
+      double endTemperature = startTemperature * END_RATIO;
+      double temperature = startTemperature;
+
+      long move = 0;
+      for (; move < moves; move++) {
+        // the temperature and the deadline only change once per n moves
+        if (move % n == 0) {
+          if (System.nanoTime() >= deadline || context.shouldStop()) {
+            break;
+          }
+          if (context.isDue()) {
+            context.report(cities, tour.tour, startTime);
+          }
+          temperature = coolingSchedule.temperature(startTemperature, endTemperature,
+              (double) move / moves);
+        }
+
+        int a = random.nextInt(n);
+        int c = neighbors[a * k + random.nextInt(k)];
+        boolean forward = random.nextBoolean();
+        int b = forward ? tour.next(a) : tour.previous(a);
+        int e = forward ? tour.next(c) : tour.previous(c);
+        if (c == b || e == a) {
+          continue;
+        }
+
+        double change = d(a, c) + d(b, e) - d(a, b) - d(c, e);
+        if (change > 0) {
+          if (change > MAX_EXPONENT * temperature
+              || random.nextDouble() >= Math.exp(-change / temperature)) {
+            continue;
+          }
+          // leaving what may be the best tour, keep it
+          if (length < bestLength - EPSILON) {
+            save(length);
+          }
+        }
+
+        tour.move(a, b, c, e);
+        length += change;
+      }
+      performed = move;
+      if (length < bestLength - EPSILON) {
+        save(length);
+      }
+
+      tour.load(best, 0);
+      search.context = context;
+      search.pushAll();
+      bestLength -= search.run();
+      System.arraycopy(tour.tour, 0, best, 0, n);
+      return bestLength;
+    }
+
+    /*
+     * temperature at which the average uphill move of the start tour is
+     * accepted with START_ACCEPTANCE, from random neighbor moves
+     */
+    private double startTemperature() {
+      double sum = 0;
+      int count = 0;
+      for (int i = 0; i < SAMPLE_MOVES; i++) {
+        int a = random.nextInt(n);
+        int c = neighbors[a * k + random.nextInt(k)];
+        int b = tour.next(a);
+        int e = tour.next(c);
+        if (c == b || e == a) {
+          continue;
+        }
+        double change = d(a, c) + d(b, e) - d(a, b) - d(c, e);
+        if (change > 0) {
+          sum += change;
+          count++;
+        }
+      }
+      double average = count > 0 ? sum / count : 1;
+      return -average / Math.log(START_ACCEPTANCE);
+    }
+
+    private void save(double length) {
+      System.arraycopy(tour.tour, 0, best, 0, n);
+      bestLength = length;
+    }
+
+    private double d(int a, int b) {
+      return distances.get(a, b);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "Simulated Annealing";
+  }
+}
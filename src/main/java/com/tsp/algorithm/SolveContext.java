@@ -0,0 +1,150 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * everything a caller hands to a solver besides the cities.
+ *
+ * cancel() and the deadline ask a running solver to stop. solvers check
+ * shouldStop() in their inner loops (per ant, per node, per step, per kick)
+ * and then return the best tour they have right away, so a cancelled run
+ * frees its threads within milliseconds.
+ *
+ * anytime solvers (the ones that keep improving a tour until their budget is
+ * used up) report every better tour they find to the improvement callback, so
+ * the best tour so far can be shown long before the run ends. reports are
+ * throttled to one per report interval and only tours shorter than the last
+ * reported one get through, so solvers can call report() from all of their
+ * threads whenever isDue() says so. the callback runs on the solver thread
+ * and has to hand the improvement off quickly
+ */
+public class SolveContext {
+  private static final long REPORT_INTERVAL_MS = 50;
+
+  private ImprovementCallback improvementCallback;
+  private long reportIntervalNanos = REPORT_INTERVAL_MS * 1_000_000;
+
+  private volatile boolean cancelled;
+  private volatile boolean hasDeadline;
+  private volatile long deadline;
+
+  private volatile long nextReport = Long.MIN_VALUE;
+  private double reportedLength = Double.MAX_VALUE;
+
+  public interface ImprovementCallback {
+    void onImprovement(Improvement improvement);
+  }
+
+  // a tour found while the solver was still running
+  public static class Improvement {
+    private final List<CityInfo> path;
+    private final double pathLength;
+    private final long elapsedTime;
+    private final double lowerBound;
+
+    public Improvement(List<CityInfo> path, double pathLength, long elapsedTime, double lowerBound) {
+      this.path = Collections.unmodifiableList(path);
+      this.pathLength = pathLength;
+      this.elapsedTime = elapsedTime;
+      this.lowerBound = lowerBound;
+    }
+
+    // closed path starting with the first city, like the one findPath returns
+    public List<CityInfo> getPath() {
+      return path;
+    }
+
+    // vincenty length in km
+    public double getPathLength() {
+      return pathLength;
+    }
+
+    // nanoseconds since the solver started
+    public long getElapsedTime() {
+      return elapsedTime;
+    }
+
+    // lower bound for the optimal tour in the metric of the solver, NaN if it has none
+    public double getLowerBound() {
+      return lowerBound;
+    }
+  }
+
+  // can be called from any thread, also before the solver started
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  // System.nanoTime() at which the solver stops like on cancel()
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+    this.hasDeadline = true;
+  }
+
+  public void setTimeLimitMillis(long timeLimitMillis) {
+    setDeadline(System.nanoTime() + timeLimitMillis * 1_000_000);
+  }
+
+  // whether the solver should stop, cheap enough for inner loops
+  public boolean shouldStop() {
+    return cancelled || (hasDeadline && System.nanoTime() - deadline >= 0);
+  }
+
+  public void setOnImprovement(ImprovementCallback callback) {
+    this.improvementCallback = callback;
+  }
+
+  // minimum time between two reports, 0 reports every better tour
+  public void setReportIntervalMillis(long reportIntervalMillis) {
+    this.reportIntervalNanos = reportIntervalMillis * 1_000_000;
+  }
+
+  // whether a report would be passed on right now, cheap enough for inner loops
+  public boolean isDue() {
+    return improvementCallback != null && System.nanoTime() >= nextReport;
+  }
+
+  public void report(List<CityInfo> cities, int[] tour, long startTime) {
+    report(cities, tour, startTime, Double.NaN);
+  }
+
+  /*
+   * reports the tour (city indices, without the return to the start) if it is
+   * due and shorter than the last reported one. startTime is the nanoTime the
+   * solver started at
+   */
+  public synchronized void report(List<CityInfo> cities, int[] tour, long startTime,
+      double lowerBound) {
+    if (!isDue() || tour.length == 0) {
+      return;
+    }
+
+    // rotated so the first city comes first, like in the final path
+    int shift = 0;
+    while (shift < tour.length && tour[shift] != 0) {
+      shift++;
+    }
+    List<CityInfo> path = new ArrayList<>(tour.length + 1);
+    for (int p = 0; p < tour.length; p++) {
+      path.add(cities.get(tour[(p + shift) % tour.length]));
+    }
+    path.add(path.get(0)); // complete the cycle
+
+    double length = DistanceCalculator.calculatePathLength(path);
+    if (length >= reportedLength) {
+      return;
+    }
+    reportedLength = length;
+    long now = System.nanoTime();
+    nextReport = now + reportIntervalNanos;
+    improvementCallback.onImprovement(new Improvement(path, length, now - startTime, lowerBound));
+  }
+}
@@ -0,0 +1,205 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * tour along a hilbert curve, for instances far too large for anything that
+ * looks at all pairs of cities.
+ *
+ * longitude and latitude are put on a 2^16 x 2^16 grid (the same scale for
+ * both, so latitude only uses half of it) and every city gets the position of
+ * its grid cell along the hilbert curve through the grid. cities that are close
+ * on the curve are close on the map, the other way round mostly too, so the
+ * cities sorted by that position are a tour that is usually around 25% longer
+ * than the optimal one. the sort is on primitive keys (curve position in the
+ * upper half, city index in the lower half), O(n log n) and no matrix.
+ *
+ * an optional Or-opt sweep then goes over the tour once and moves every
+ * segment of 1-3 cities to the best place among the next and previous few
+ * positions, distances computed on demand. the path length is summed edge by
+ * edge
+ */
+public class SpaceFillingCurve implements TSPAlgorithm {
+  private static final double EPSILON = 1e-9;
+  private static final int ORDER = 16; // the grid is 2^ORDER cells wide
+  private static final int WINDOW = 8; // positions before and after a segment the sweep tries
+  private static final int MAX_SEGMENT = 3; // longest segment moved by the sweep
+
+  // metric of the sweep, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  private boolean orOptSweep = true;
+
+  /*
+   * the sweep only compares cities close to each other, the chord ranks them
+   * like the great circle and is by far the cheapest to compute on demand
+   */
+  public SpaceFillingCurve() {
+    this(DistanceMetric.CHORD);
+  }
+
+  public SpaceFillingCurve(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  public void setOrOptSweep(boolean orOptSweep) {
+    this.orOptSweep = orOptSweep;
+  }
+
+  @Override
+  public TSPResult solve(List<CityInfo> cities, SolveContext context) {
+    long startTime = System.nanoTime();
+
+    int[] order = curveOrder(cities);
+    if (orOptSweep) {
+      orOptSweep(order, metric.prepare(cities));
+    }
+    // keep the first city first, like every other algorithm
+    int shift = 0;
+    while (shift < order.length && order[shift] != 0) {
+      shift++;
+    }
+
+    int n = order.length;
+    List<CityInfo> finalPath = new ArrayList<>();
+    for (int p = 0; p < n; p++) {
+      finalPath.add(cities.get(order[(p + shift) % n]));
+    }
+    if (n > 0) {
+      finalPath.add(finalPath.get(0)); // complete the cycle
+    }
+
+    return new TSPResult(finalPath, DistanceCalculator.calculatePathLength(finalPath),
+        System.nanoTime() - startTime);
+  }
+
+  // the city indices sorted by their position on the curve
+  static int[] curveOrder(List<CityInfo> cities) {
+    int n = cities.size();
+    int cells = 1 << ORDER;
+    long[] keys = new long[n];
+    for (int i = 0; i < n; i++) {
+      CityInfo city = cities.get(i);
+      int x = cell((city.getLongitude() + 180) / 360, cells);
+      int y = cell((city.getLatitude() + 90) / 360, cells);
+      keys[i] = hilbertIndex(x, y) << 32 | i;
+    }
+    Arrays.sort(keys);
+
+    int[] order = new int[n];
+    for (int p = 0; p < n; p++) {
+      order[p] = (int) keys[p];
+    }
+    return order;
+  }
+
+  private static int cell(double fraction, int cells) {
+    return Math.max(0, Math.min(cells - 1, (int) (fraction * cells)));
+  }
+
+  // position of the cell (x, y) along the hilbert curve, 2 * ORDER bits
+  private static long hilbertIndex(int x, int y) {
+    long index = 0;
+    for (int s = 1 << (ORDER - 1); s > 0; s >>= 1) {
+      int rx = (x & s) != 0 ? 1 : 0;
+      int ry = (y & s) != 0 ? 1 : 0;
+      index += (long) s * s * ((3 * rx) ^ ry);
+      // turn the quadrant so the curve inside it starts and ends at the right corners
+      if (ry == 0) {
+        if (rx == 1) {
+          x = s - 1 - (x & (s - 1));
+          y = s - 1 - (y & (s - 1));
+        }
+        int tmp = x;
+        x = y;
+        y = tmp;
+      }
+    }
+    return index;
+  }
+
+  /*
+   * one pass of Or-opt over the tour in place. the segment of 1-3 cities that
+   * starts at a position is moved between two cities at most WINDOW positions
+   * before or after it, maybe reversed, if that makes the tour shorter. a move
+   * only shifts the cities in between, so the pass is O(n * WINDOW). returns
+   * the gain
+   */
+  static double orOptSweep(int[] tour, DistanceMatrix distances) {
+    int n = tour.length;
+    double gain = 0;
+    if (n < 8) {
+      return gain;
+    }
+
+    int[] segment = new int[MAX_SEGMENT];
+    for (int i = 1; i + 1 < n; i++) {
+      double bestGain = EPSILON;
+      int bestLength = 0;
+      int bestTarget = 0;
+      boolean bestReversed = false;
+
+      for (int length = 1; length <= MAX_SEGMENT && i + length < n; length++) {
+        int p = tour[i - 1];
+        int s1 = tour[i];
+        int s2 = tour[i + length - 1];
+        int nx = tour[i + length];
+        double removeGain = distances.get(p, s1) + distances.get(s2, nx) - distances.get(p, nx);
+        if (removeGain <= bestGain) {
+          continue;
+        }
+
+        // between tour[j] and tour[j + 1], j outside the segment and not p
+        int from = Math.max(0, i - 1 - WINDOW);
+        int to = Math.min(n - 2, i + length - 1 + WINDOW);
+        for (int j = from; j <= to; j++) {
+          if (j >= i - 1 && j < i + length) {
+            continue;
+          }
+          int x = tour[j];
+          int y = tour[j + 1];
+          double removed = distances.get(x, y);
+          double forward = distances.get(x, s1) + distances.get(s2, y) - removed;
+          double reversed = distances.get(x, s2) + distances.get(s1, y) - removed;
+          double moveGain = removeGain - Math.min(forward, reversed);
+          if (moveGain > bestGain) {
+            bestGain = moveGain;
+            bestLength = length;
+            bestTarget = j;
+            bestReversed = reversed < forward;
+          }
+        }
+      }
+
+      if (bestLength > 0) {
+        // take the segment out, shift the cities in between and put it back in
+        for (int s = 0; s < bestLength; s++) {
+          segment[s] = tour[i + (bestReversed ? bestLength - 1 - s : s)];
+        }
+        int insert;
+        if (bestTarget > i) {
+          System.arraycopy(tour, i + bestLength, tour, i, bestTarget - i - bestLength + 1);
+          insert = bestTarget - bestLength + 1;
+        } else {
+          System.arraycopy(tour, bestTarget + 1, tour, bestTarget + 1 + bestLength, i - bestTarget - 1);
+          insert = bestTarget + 1;
+        }
+        System.arraycopy(segment, 0, tour, insert, bestLength);
+        gain += bestGain;
+      }
+    }
+
+    return gain;
+  }
+
+  @Override
+  public String getName() {
+    return "Space-Filling Curve";
+  }
+}
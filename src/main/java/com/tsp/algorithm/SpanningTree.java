@@ -0,0 +1,312 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CandidateNeighbors;
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
+import com.tsp.util.TSPUtils;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*
+ * minimum spanning tree for the tree based constructors, built with prim.
+ *
+ * small instances use the full distance matrix and the plain O(n^2) array
+ * version (no heap, every step scans the keys of all cities). larger ones only
+ * look at the edges to the k nearest cities (in both directions) with a heap,
+ * O(n k log n). that is the exact minimum spanning tree as long as the
+ * candidate graph contains it, which is practically always the case for
+ * cities on a map. if the candidate graph falls apart, the parts are joined by
+ * the shortest edge between the tree and all remaining cities. the closest
+ * tree city of every remaining city is kept between the joins and only
+ * compared with the cities added since the last one, so all joins together
+ * look at every pair at most once (O(n^2) for separate clusters, not per part).
+ *
+ * every round trip minus one edge is a spanning tree, so the weight of the
+ * minimum one is a lower bound for the optimal tour
+ */
+class SpanningTree {
+  private static final int DENSE_LIMIT = 2000; // above this no full distance matrix is built
+  private static final int NEIGHBORS = 10;
+
+  final int n;
+  final int[] parent; // -1 for the root (city 0)
+  final double weight;
+  final DistanceMatrix distances; // dense matrix or the candidates
+  final CandidateNeighbors candidates; // null for the dense version
+
+  private SpanningTree(int[] parent, double weight, DistanceMatrix distances,
+      CandidateNeighbors candidates) {
+    this.n = parent.length;
+    this.parent = parent;
+    this.weight = weight;
+    this.distances = distances;
+    this.candidates = candidates;
+  }
+
+  static SpanningTree build(List<CityInfo> cities, DistanceMetric metric) {
+    if (cities.size() <= DENSE_LIMIT) {
+      return build(TSPUtils.calculateDistanceMatrix(cities, metric));
+    }
+    return build(CandidateNeighbors.build(cities, NEIGHBORS, metric));
+  }
+
+  // array based prim over the full matrix
+  static SpanningTree build(DistanceMatrix distances) {
+    int n = distances.size();
+    int[] parent = new int[n];
+    double[] key = new double[n];
+    boolean[] inTree = new boolean[n];
+    Arrays.fill(key, Double.MAX_VALUE);
+    Arrays.fill(parent, -1);
+    double weight = 0;
+
+    int next = 0;
+    key[0] = 0;
+    for (int step = 0; step < n; step++) {
+      int city = next;
+      inTree[city] = true;
+      weight += key[city];
+
+      // update the keys and find the next city in the same scan
+      next = -1;
+      for (int v = 0; v < n; v++) {
+        if (inTree[v]) {
+          continue;
+        }
+        double d = distances.get(city, v);
+        if (d < key[v]) {
+          key[v] = d;
+          parent[v] = city;
+        }
+        if (next < 0 || key[v] < key[next]) {
+          next = v;
+        }
+      }
+    }
+
+    return new SpanningTree(parent, weight, distances, null);
+  }
+
+  // prim with a heap over the candidate graph
+  static SpanningTree build(CandidateNeighbors candidates) {
+    int n = candidates.size();
+    int k = candidates.getK();
+
+    // undirected candidate graph as adjacency arrays
+    int[] start = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      for (int r = 0; r < k; r++) {
+        start[i + 1]++;
+        start[candidates.neighbor(i, r) + 1]++;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      start[i + 1] += start[i];
+    }
+    int[] adjacent = new int[start[n]];
+    int[] fill = Arrays.copyOf(start, n);
+    for (int i = 0; i < n; i++) {
+      for (int r = 0; r < k; r++) {
+        int j = candidates.neighbor(i, r);
+        adjacent[fill[i]++] = j;
+        adjacent[fill[j]++] = i;
+      }
+    }
+
+    int[] parent = new int[n];
+    double[] key = new double[n];
+    boolean[] inTree = new boolean[n];
+    Arrays.fill(key, Double.MAX_VALUE);
+    Arrays.fill(parent, -1);
+    Heap heap = new Heap(key);
+    Join join = null; // created at the first join, most candidate graphs are connected
+    int[] order = new int[n]; // cities in the order they joined the tree
+    double weight = 0;
+    int added = 0;
+
+    key[0] = 0;
+    heap.update(0);
+    while (added < n) {
+      if (heap.isEmpty()) {
+        // candidate graph not connected, the next city is the closest one to the tree
+        if (join == null) {
+          join = new Join(n);
+        }
+        heap.update(join.closestToTree(candidates, inTree, order, added, key, parent));
+      }
+
+      int city = heap.poll();
+      inTree[city] = true;
+      order[added] = city;
+      weight += key[city];
+      added++;
+
+      for (int e = start[city]; e < start[city + 1]; e++) {
+        int v = adjacent[e];
+        if (!inTree[v]) {
+          double d = candidates.get(city, v);
+          if (d < key[v]) {
+            key[v] = d;
+            parent[v] = city;
+            heap.update(v);
+          }
+        }
+      }
+    }
+
+    return new SpanningTree(parent, weight, candidates, candidates);
+  }
+
+  // closest tree city of every remaining city, carried from one join to the next
+  private static class Join {
+    private final double[] best;
+    private final int[] nearest; // -1 while no tree city was compared
+    private int scanned; // cities of the tree order already compared
+
+    Join(int n) {
+      best = new double[n];
+      nearest = new int[n];
+      Arrays.fill(best, Double.MAX_VALUE);
+      Arrays.fill(nearest, -1);
+    }
+
+    /*
+     * sets key and parent of the remaining city with the shortest edge into
+     * the tree, like prim would with all edges, and returns it. the tree is
+     * order[0..added), only the cities added since the last call are compared
+     */
+    int closestToTree(DistanceMatrix distances, boolean[] inTree, int[] order, int added,
+        double[] key, int[] parent) {
+      int n = inTree.length;
+      int from = scanned;
+      IntStream.range(0, n).parallel().forEach(v -> {
+        if (inTree[v]) {
+          return;
+        }
+        for (int t = from; t < added; t++) {
+          int u = order[t];
+          double d = distances.get(u, v);
+          if (d < best[v]) {
+            best[v] = d;
+            nearest[v] = u;
+          }
+        }
+      });
+      scanned = added;
+
+      int city = -1;
+      for (int v = 0; v < n; v++) {
+        if (!inTree[v] && nearest[v] >= 0 && (city < 0 || best[v] < best[city])) {
+          city = v;
+        }
+      }
+      key[city] = best[city];
+      parent[city] = nearest[city];
+      return city;
+    }
+  }
+
+  // cities in depth first order from the root, children in index order
+  int[] preorder() {
+    int[] childStart = new int[n + 1];
+    for (int v = 0; v < n; v++) {
+      if (parent[v] >= 0) {
+        childStart[parent[v] + 1]++;
+      }
+    }
+    for (int v = 0; v < n; v++) {
+      childStart[v + 1] += childStart[v];
+    }
+    int[] children = new int[Math.max(0, n - 1)];
+    int[] fill = Arrays.copyOf(childStart, n);
+    for (int v = 0; v < n; v++) {
+      if (parent[v] >= 0) {
+        children[fill[parent[v]]++] = v;
+      }
+    }
+
+    int[] order = new int[n];
+    int[] stack = new int[n];
+    int size = 0;
+    int count = 0;
+    stack[size++] = 0;
+    while (size > 0) {
+      int city = stack[--size];
+      order[count++] = city;
+      // pushed backwards so the smallest child comes first
+      for (int c = childStart[city + 1] - 1; c >= childStart[city]; c--) {
+        stack[size++] = children[c];
+      }
+    }
+    return order;
+  }
+
+  // binary min heap of city indices ordered by key, supports decrease key
+  private static class Heap {
+    private final double[] key;
+    private final int[] heap;
+    private final int[] index; // position in the heap, -1 if not in it
+    private int size;
+
+    Heap(double[] key) {
+      this.key = key;
+      this.heap = new int[key.length];
+      this.index = new int[key.length];
+      Arrays.fill(index, -1);
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    // inserts the city or moves it up after its key got smaller
+    void update(int city) {
+      int i = index[city];
+      if (i < 0) {
+        i = size++;
+        heap[i] = city;
+        index[city] = i;
+      }
+      while (i > 0) {
+        int up = (i - 1) / 2;
+        if (key[heap[up]] <= key[city]) {
+          break;
+        }
+        heap[i] = heap[up];
+        index[heap[i]] = i;
+        i = up;
+      }
+      heap[i] = city;
+      index[city] = i;
+    }
+
+    int poll() {
+      int top = heap[0];
+      index[top] = -1;
+      int last = heap[--size];
+      if (size > 0) {
+        int i = 0;
+        while (true) {
+          int child = 2 * i + 1;
+          if (child >= size) {
+            break;
+          }
+          if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) {
+            child++;
+          }
+          if (key[heap[child]] >= key[last]) {
+            break;
+          }
+          heap[i] = heap[child];
+          index[heap[i]] = i;
+          i = child;
+        }
+        heap[i] = last;
+        index[last] = i;
+      }
+      return top;
+    }
+  }
+}
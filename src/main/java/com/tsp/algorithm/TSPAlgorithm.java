@@ -3,12 +3,29 @@ package com.tsp.algorithm;
 import com.tsp.util.CityData.CityInfo;
 import java.util.List;
 
+/*
+ * an algorithm keeps only its settings, everything about one run is in the
+ * returned result (and the context). one instance can therefore solve any
+ * number of instances at the same time, the settings should not be changed
+ * while it does
+ */
 public interface TSPAlgorithm {
-  List<CityInfo> findPath(List<CityInfo> cities);
+  /*
+   * the solver stops early with the best tour it has when the context is
+   * cancelled or its deadline passes. solvers that improve their tour step
+   * by step also report the better tours to the context while they run.
+   * constructors that are done in milliseconds anyway ignore the context
+   */
+  TSPResult solve(List<CityInfo> cities, SolveContext context);
 
-  String getName();
+  default TSPResult solve(List<CityInfo> cities) {
+    return solve(cities, new SolveContext());
+  }
 
-  double getPathLength();
+  // only the path of solve()
+  default List<CityInfo> findPath(List<CityInfo> cities) {
+    return solve(cities).getPath();
+  }
 
-  long getExecutionTime();
+  String getName();
 }
@@ -0,0 +1,60 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// outcome of one solve, immutable so it can be passed between threads freely
+public final class TSPResult {
+  private final List<CityInfo> path;
+  private final double pathLength;
+  private final long executionTime;
+  private final double lowerBound;
+  private final long iterations;
+
+  public TSPResult(List<CityInfo> path, double pathLength, long executionTime) {
+    this(path, pathLength, executionTime, Double.NaN, 0);
+  }
+
+  public TSPResult(List<CityInfo> path, double pathLength, long executionTime, double lowerBound,
+      long iterations) {
+    this.path = path != null ? Collections.unmodifiableList(new ArrayList<>(path)) : null;
+    this.pathLength = pathLength;
+    this.executionTime = executionTime;
+    this.lowerBound = lowerBound;
+    this.iterations = iterations;
+  }
+
+  /*
+   * closed path starting with the first city, null when the algorithm gave up
+   * (too many cities, not enough memory, stopped before it had a tour)
+   */
+  public List<CityInfo> getPath() {
+    return path;
+  }
+
+  // vincenty length in km, 0 without a path
+  public double getPathLength() {
+    return pathLength;
+  }
+
+  // nanoseconds
+  public long getExecutionTime() {
+    return executionTime;
+  }
+
+  // lower bound for the optimal tour in the metric of the solver, NaN if it has none
+  public double getLowerBound() {
+    return lowerBound;
+  }
+
+  /*
+   * steps of the main loop: iterations (ACO), expanded nodes (branch and
+   * bound), kicks (Lin-Kernighan), generations (genetic algorithm), moves
+   * (simulated annealing). 0 for algorithms without one
+   */
+  public long getIterations() {
+    return iterations;
+  }
+}
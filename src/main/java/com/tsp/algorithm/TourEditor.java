@@ -0,0 +1,230 @@
+package com.tsp.algorithm;
+
+import com.tsp.util.CityData.CityInfo;
+import com.tsp.util.DistanceCalculator;
+import com.tsp.util.DistanceMatrix;
+import com.tsp.util.DistanceMetric;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * changes a finished tour by one city instead of solving again.
+ *
+ * a new city goes between the two neighboring cities of the tour where it
+ * adds the least length (cheapest insertion), a removed city is spliced out
+ * and its two neighbors are connected. after that only the cities within
+ * WINDOW positions of the change are repaired: the window is a path with
+ * fixed ends, 2-opt and the Or-opt sweep run on it until neither helps. the
+ * rest of the tour keeps its quality, so this is O(n) for the insertion plus
+ * O(WINDOW^2) for the repair, distances computed on demand. the vincenty
+ * length is updated from the edges that changed instead of summed again
+ */
+public class TourEditor {
+  private static final double EPSILON = 1e-9;
+  private static final int WINDOW = 20; // positions before and after the change that are repaired
+  private static final int MAX_PASSES = 5; // repair passes over the window
+
+  // metric of the insertion and the repair, the reported path length is always vincenty
+  private final DistanceMetric metric;
+
+  /*
+   * the insertion compares detours over long edges too, where the chord is
+   * off. haversine is within 0.5% of vincenty and still cheap on demand
+   */
+  public TourEditor() {
+    this(DistanceMetric.HAVERSINE);
+  }
+
+  public TourEditor(DistanceMetric metric) {
+    this.metric = metric;
+  }
+
+  /*
+   * the tour of a result with the city inserted. the result is closed and
+   * starts with the same city
+   */
+  public TSPResult insert(TSPResult tour, CityInfo city) {
+    long startTime = System.nanoTime();
+
+    List<CityInfo> cities = open(tour.getPath());
+    cities.add(city);
+    int n = cities.size();
+    int added = n - 1;
+    DistanceMatrix distances = metric.prepare(cities);
+
+    // the detour of every tour edge, the city goes into the cheapest one
+    int position = added;
+    if (n > 3) {
+      double bestCost = Double.MAX_VALUE;
+      for (int p = 0; p < added; p++) {
+        int a = p;
+        int b = p + 1 == added ? 0 : p + 1;
+        double cost = distances.get(a, added) + distances.get(added, b) - distances.get(a, b);
+        if (cost < bestCost) {
+          bestCost = cost;
+          position = p + 1;
+        }
+      }
+    }
+
+    int[] order = new int[n];
+    for (int p = 0, i = 0; p < n; p++) {
+      order[p] = p == position ? added : i++;
+    }
+    double length = tour.getPathLength();
+    if (n > 1) {
+      CityInfo a = cities.get(order[position - 1]);
+      CityInfo b = cities.get(order[(position + 1) % n]);
+      length += distance(a, city) + distance(city, b) - distance(a, b);
+    }
+    length += repair(order, position, distances, cities);
+
+    return result(cities, order, length, startTime);
+  }
+
+  /*
+   * the tour of a result without the city, unchanged if it is not on the
+   * tour. the result is closed and starts with the same city, or with the one
+   * after it if the first city was removed
+   */
+  public TSPResult remove(TSPResult tour, CityInfo city) {
+    long startTime = System.nanoTime();
+
+    List<CityInfo> cities = open(tour.getPath());
+    int position = cities.indexOf(city);
+    double length = tour.getPathLength();
+    if (position >= 0) {
+      CityInfo a = cities.get((position + cities.size() - 1) % cities.size());
+      CityInfo b = cities.get((position + 1) % cities.size());
+      length += distance(a, b) - distance(a, city) - distance(city, b);
+      cities.remove(position);
+    }
+    int n = cities.size();
+
+    int[] order = new int[n];
+    for (int p = 0; p < n; p++) {
+      order[p] = p;
+    }
+    if (position >= 0 && n > 0) {
+      // the gap is right before the city that took its place
+      length += repair(order, position % n, metric.prepare(cities), cities);
+    }
+
+    return result(cities, order, length, startTime);
+  }
+
+  private static List<CityInfo> open(List<CityInfo> path) {
+    List<CityInfo> cities = new ArrayList<>(path);
+    if (cities.size() > 1 && cities.get(0) == cities.get(cities.size() - 1)) {
+      cities.remove(cities.size() - 1);
+    }
+    return cities;
+  }
+
+  private static TSPResult result(List<CityInfo> cities, int[] order, double length,
+      long startTime) {
+    List<CityInfo> finalPath = new ArrayList<>();
+    for (int index : order) {
+      finalPath.add(cities.get(index));
+    }
+    if (!finalPath.isEmpty()) {
+      finalPath.add(finalPath.get(0)); // complete the cycle
+    }
+    return new TSPResult(finalPath, Math.max(0, length), System.nanoTime() - startTime);
+  }
+
+  private static double distance(CityInfo city1, CityInfo city2) {
+    return DistanceCalculator.calculateDistance(city1, city2);
+  }
+
+  // vincenty length of the cities at the positions from..to of the order
+  private static double pathLength(int[] order, int from, int to, List<CityInfo> cities) {
+    double length = 0;
+    for (int p = from; p < to; p++) {
+      length += distance(cities.get(order[p % order.length]),
+          cities.get(order[(p + 1) % order.length]));
+    }
+    return length;
+  }
+
+  /*
+   * improves the cities within WINDOW positions of center in place, the first
+   * city stays first. small tours are one window anyway, they get the full
+   * local search. returns the change of the vincenty length
+   */
+  private static double repair(int[] order, int center, DistanceMatrix distances,
+      List<CityInfo> cities) {
+    int n = order.length;
+    int size = 2 * WINDOW + 1;
+    if (n <= size + 1) {
+      double before = pathLength(order, 0, n, cities);
+      LocalSearch.optimize(order, distances, null);
+      return pathLength(order, 0, n, cities) - before;
+    }
+
+    int first = order[0];
+    int from = center - WINDOW + n;
+    int[] window = new int[size];
+    for (int p = 0; p < size; p++) {
+      window[p] = order[(from + p) % n];
+    }
+    double before = pathLength(order, from, from + size - 1, cities);
+
+    for (int pass = 0; pass < MAX_PASSES; pass++) {
+      double gain = twoOpt(window, distances) + SpaceFillingCurve.orOptSweep(window, distances);
+      if (gain <= EPSILON) {
+        break;
+      }
+    }
+
+    for (int p = 0; p < size; p++) {
+      order[(from + p) % n] = window[p];
+    }
+    double change = pathLength(order, from, from + size - 1, cities) - before;
+
+    // the window may have moved the first city
+    int shift = 0;
+    while (order[shift] != first) {
+      shift++;
+    }
+    if (shift > 0) {
+      int[] copy = order.clone();
+      for (int p = 0; p < n; p++) {
+        order[p] = copy[(p + shift) % n];
+      }
+    }
+    return change;
+  }
+
+  // first improvement 2-opt on a path whose two ends stay in place, returns the gain
+  private static double twoOpt(int[] path, DistanceMatrix distances) {
+    int n = path.length;
+    double gain = 0;
+    boolean improved = true;
+
+    while (improved) {
+      improved = false;
+      for (int i = 0; i + 3 < n; i++) {
+        for (int j = i + 2; j + 1 < n; j++) {
+          int a = path[i];
+          int b = path[i + 1];
+          int c = path[j];
+          int e = path[j + 1];
+          double change = distances.get(a, b) + distances.get(c, e)
+              - distances.get(a, c) - distances.get(b, e);
+          if (change > EPSILON) {
+            for (int from = i + 1, to = j; from < to; from++, to--) {
+              int tmp = path[from];
+              path[from] = path[to];
+              path[to] = tmp;
+            }
+            gain += change;
+            improved = true;
+          }
+        }
+      }
+    }
+
+    return gain;
+  }
+}
@@ -5,44 +5,89 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.tsp.algorithm.ACO;
 import com.tsp.algorithm.BranchAndBound;
+import com.tsp.algorithm.Christofides;
+import com.tsp.algorithm.DoubleTree;
+import com.tsp.algorithm.GeneticAlgorithm;
+import com.tsp.algorithm.HeldKarp;
+import com.tsp.algorithm.LinKernighan;
+import com.tsp.algorithm.LocalSearch;
 import com.tsp.algorithm.NearestNeighbor;
+import com.tsp.algorithm.ResultCache;
+import com.tsp.algorithm.SimulatedAnnealing;
+import com.tsp.algorithm.SolveContext;
+import com.tsp.algorithm.SolveContext.Improvement;
+import com.tsp.algorithm.SpaceFillingCurve;
 import com.tsp.algorithm.TSPAlgorithm;
+import com.tsp.algorithm.TSPResult;
+import com.tsp.algorithm.TourEditor;
 import com.tsp.util.CityData.CityInfo;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.TextArea;
 import javafx.scene.layout.VBox;
 
 public class AlgorithmPanel extends VBox {
+  private static final long RESOLVE_DELAY_MS = 500; // quiet time after an edit before a full solve starts
+  private static final long FAST_SOLVE_MS = 200; // solvers at most this slow always solve again after an edit
+  private static final int EDIT_RATIO = 10; // the others after cities / EDIT_RATIO edits
+  private static final long RESULT_CACHE_BYTES = 16L << 20; // about 800 results for 1000 cities
+
   private final List<TSPAlgorithm> algorithms;
   private final TextArea resultArea;
   public final PathRenderer pathRenderer;
   private int selectedAlgorithm;
+  private boolean improveTours = false;
+  private boolean editIncrementally = true;
   private List<CityInfo> currentCities = new ArrayList<>();
 
   // cache for the algorithm results at their index
-  private final Map<Integer, CompletableFuture<AlgorithmResult>> runningCalculations = new HashMap<>();
+  private final Map<Integer, CompletableFuture<TSPResult>> runningCalculations = new HashMap<>();
 
-  private static class AlgorithmResult {
-    final List<CityInfo> path;
-    final double pathLength;
-    final long executionTime;
+  /*
+   * best tours so far of the running algorithms. the solver threads only put
+   * their latest improvement into the pending reference, once per frame the
+   * newest one is taken out and shown, so fast solvers can't flood the ui
+   */
+  private final Map<Integer, AtomicReference<Improvement>> pendingImprovements = new HashMap<>();
+  // cancelling a future doesnt stop the solver, its context does
+  private final Map<Integer, SolveContext> runningContexts = new HashMap<>();
+  private final Map<Integer, Improvement> liveImprovements = new HashMap<>();
 
-    AlgorithmResult(List<CityInfo> path, double pathLength, long executionTime) {
-      this.path = path;
-      this.pathLength = pathLength;
-      this.executionTime = executionTime;
-    }
-  }
+  /*
+   * a single added or removed city is put into (or cut out of) the finished
+   * tours right away. the edits since the last full solve of an algorithm and
+   * the time that solve took decide whether it runs again in the background
+   */
+  private final TourEditor tourEditor = new TourEditor();
+  private final Map<Integer, Integer> editsSinceSolve = new HashMap<>();
+  private final Map<Integer, Long> solveTimes = new HashMap<>();
+
+  /*
+   * finished full solves by city set, in any order, and algorithm settings.
+   * a set that was solved before (another order, a city removed and added
+   * again) is shown right away instead of solved again
+   */
+  private final ResultCache resultCache = new ResultCache(RESULT_CACHE_BYTES);
 
   public AlgorithmPanel(WorldMap worldMap) {
     algorithms = List.of(
         new NearestNeighbor(),
         new BranchAndBound(),
-        new ACO());
+        new ACO(),
+        new HeldKarp(),
+        new LinKernighan(),
+        new DoubleTree(),
+        new Christofides(),
+        new GeneticAlgorithm(),
+        new SimulatedAnnealing(),
+        new SpaceFillingCurve());
 
     pathRenderer = new PathRenderer(worldMap);
     worldMap.getChildren().add(pathRenderer);
@@ -51,22 +96,78 @@ public class AlgorithmPanel extends VBox {
     resultArea.setEditable(false);
     resultArea.setPrefRowCount(11);
 
-    getChildren().add(resultArea);
+    // post processing for the tours of all algorithms
+    CheckBox improveBox = new CheckBox("Improve tours with 2-opt / Or-opt");
+    improveBox.setOnAction(e -> {
+      improveTours = improveBox.isSelected();
+      if (!currentCities.isEmpty()) {
+        // rerun everything with the new setting
+        List<CityInfo> cities = new ArrayList<>(currentCities);
+        currentCities = new ArrayList<>();
+        runAlgorithms(cities);
+      }
+    });
+
+    CheckBox incrementalBox = new CheckBox("Edit tours incrementally when a city is added or removed");
+    incrementalBox.setSelected(editIncrementally);
+    incrementalBox.setOnAction(e -> editIncrementally = incrementalBox.isSelected());
+
+    getChildren().addAll(improveBox, incrementalBox, resultArea);
+
+    new AnimationTimer() {
+      @Override
+      public void handle(long now) {
+        showImprovements();
+      }
+    }.start();
+  }
+
+  // shows the improvements that came in since the last frame
+  private void showImprovements() {
+    boolean changed = false;
+    for (Map.Entry<Integer, AtomicReference<Improvement>> entry : pendingImprovements.entrySet()) {
+      int index = entry.getKey();
+      Improvement improvement = entry.getValue().getAndSet(null);
+      CompletableFuture<TSPResult> calculation = runningCalculations.get(index);
+      // the final result has priority
+      if (improvement == null || calculation == null || calculation.isDone()) {
+        continue;
+      }
+      liveImprovements.put(index, improvement);
+      if (index == selectedAlgorithm) {
+        pathRenderer.renderPath(improvement.getPath());
+      }
+      changed = true;
+    }
+    if (changed) {
+      updateResultArea();
+    }
+  }
+
+  // names of the algorithms in the order of their indices
+  public List<String> getAlgorithmNames() {
+    List<String> names = new ArrayList<>();
+    for (TSPAlgorithm algorithm : algorithms) {
+      names.add(algorithm.getName());
+    }
+    return names;
   }
 
   public void selectAlgorithm(int index) {
     this.selectedAlgorithm = index;
     if (!currentCities.isEmpty()) {
       // get the result for the selected algorithm
-      CompletableFuture<AlgorithmResult> calculation = runningCalculations.get(index);
+      CompletableFuture<TSPResult> calculation = runningCalculations.get(index);
       // if algorithm result exists and is done
       if (calculation != null && calculation.isDone()) {
         try {
-          AlgorithmResult result = calculation.get(); // get waits for future to complete
-          pathRenderer.renderPath(result.path);
+          TSPResult result = calculation.get(); // get waits for future to complete
+          pathRenderer.renderPath(result.getPath());
         } catch (Exception e) {
           e.printStackTrace();
         }
+      } else if (liveImprovements.containsKey(index)) {
+        pathRenderer.renderPath(liveImprovements.get(index).getPath());
       }
     }
   }
@@ -80,47 +181,31 @@ public class AlgorithmPanel extends VBox {
 
     // check if cities have changed
     boolean citiesChanged = !cities.equals(currentCities);
+    List<CityInfo> previousCities = currentCities;
     currentCities = new ArrayList<>(cities);
 
     // if cities changef cancel existing calculations and start new ones
     if (citiesChanged) {
-      runningCalculations.values().forEach(future -> future.cancel(true));
-      runningCalculations.clear();
+      if (editIncrementally && editTours(previousCities, currentCities)) {
+        return;
+      }
+      cancelCalculations();
 
       resultArea.setText("Calculating...");
 
       // start new calculations for all algorithms
       for (int i = 0; i < algorithms.size(); i++) {
-        final int algorithmIndex = i;
-        final TSPAlgorithm algorithm = algorithms.get(i);
-
-        // start a new thread to run the algorithm
-        CompletableFuture<AlgorithmResult> calculation = CompletableFuture.supplyAsync(() -> {
-          List<CityInfo> path = algorithm.findPath(cities);
-          return new AlgorithmResult(
-              path,
-              algorithm.getPathLength(),
-              algorithm.getExecutionTime());
-        });
-
-        // put the result of the calculation in the hashmap
-        runningCalculations.put(algorithmIndex, calculation);
-
-        // update UI when calculation completes
-        calculation.thenAcceptAsync(result -> {
-          if (algorithmIndex == selectedAlgorithm) {
-            pathRenderer.renderPath(result.path);
-          }
-          updateResultArea();
-        }, Platform::runLater);
+        startCalculation(i, currentCities);
       }
+      // cached results are done already
+      updateResultArea();
     } else {
       // if the cities dont have changed update the display for the selected algorithm
-      CompletableFuture<AlgorithmResult> calculation = runningCalculations.get(selectedAlgorithm);
+      CompletableFuture<TSPResult> calculation = runningCalculations.get(selectedAlgorithm);
       if (calculation != null && calculation.isDone()) {
         try {
-          AlgorithmResult result = calculation.get();
-          pathRenderer.renderPath(result.path);
+          TSPResult result = calculation.get();
+          pathRenderer.renderPath(result.getPath());
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -128,6 +213,208 @@ public class AlgorithmPanel extends VBox {
     }
   }
 
+  private void startCalculation(int algorithmIndex, List<CityInfo> cities) {
+    final TSPAlgorithm algorithm = algorithms.get(algorithmIndex);
+    final boolean improve = improveTours;
+    final String parameters = cacheParameters(algorithmIndex);
+
+    TSPResult cached = resultCache.get(cities, parameters);
+    if (cached != null) {
+      showCached(algorithmIndex, cached);
+      return;
+    }
+
+    AtomicReference<Improvement> pending = new AtomicReference<>();
+    pendingImprovements.put(algorithmIndex, pending);
+    SolveContext context = new SolveContext();
+    context.setOnImprovement(pending::set);
+    runningContexts.put(algorithmIndex, context);
+
+    // start a new thread to run the algorithm
+    CompletableFuture<TSPResult> calculation = CompletableFuture.supplyAsync(
+        () -> solve(algorithm, cities, context, improve, parameters));
+
+    // put the result of the calculation in the hashmap
+    runningCalculations.put(algorithmIndex, calculation);
+
+    // update UI when calculation completes
+    calculation.thenAcceptAsync(result -> {
+      if (runningCalculations.get(algorithmIndex) != calculation) {
+        return; // replaced while the result was on its way
+      }
+      runningContexts.remove(algorithmIndex);
+      solveTimes.put(algorithmIndex, result.getExecutionTime());
+      editsSinceSolve.remove(algorithmIndex);
+      if (algorithmIndex == selectedAlgorithm) {
+        pathRenderer.renderPath(result.getPath());
+      }
+      updateResultArea();
+    }, Platform::runLater);
+  }
+
+  /*
+   * a stopped solve only has the best tour so far, that one is not cached,
+   * neither is a result without a tour (see ResultCache.put). a branch and
+   * bound run that hit its time limit is cached like a final answer: solving
+   * again gets the same time limit and ends with the same or a similar tour
+   */
+  private TSPResult solve(TSPAlgorithm algorithm, List<CityInfo> cities,
+      SolveContext context, boolean improve, String parameters) {
+    TSPResult result = algorithm.solve(cities, context);
+    if (improve && result.getPath() != null && !context.isCancelled()) {
+      TSPResult improved = new LocalSearch().improve(result.getPath());
+      result = new TSPResult(
+          improved.getPath(),
+          improved.getPathLength(),
+          result.getExecutionTime() + improved.getExecutionTime(),
+          result.getLowerBound(),
+          result.getIterations());
+    }
+    if (!context.isCancelled() && result.getPath() != null) {
+      resultCache.put(cities, parameters, result);
+    }
+    return result;
+  }
+
+  // the algorithm and the settings of the panel that change its result
+  private String cacheParameters(int algorithmIndex) {
+    return algorithms.get(algorithmIndex).getName() + (improveTours ? " + local search" : "");
+  }
+
+  private void showCached(int algorithmIndex, TSPResult result) {
+    runningCalculations.put(algorithmIndex, CompletableFuture.completedFuture(result));
+    editsSinceSolve.remove(algorithmIndex);
+    if (algorithmIndex == selectedAlgorithm) {
+      pathRenderer.renderPath(result.getPath());
+    }
+  }
+
+  /*
+   * puts a single added city into the finished tours or cuts a single removed
+   * one out of them, in milliseconds. algorithms without a tour yet start
+   * over. returns false if the cities changed in any other way
+   */
+  private boolean editTours(List<CityInfo> previous, List<CityInfo> cities) {
+    CityInfo added = null;
+    CityInfo removed = null;
+    if (previous.size() < 2) {
+      return false;
+    } else if (cities.size() == previous.size() + 1
+        && cities.subList(0, previous.size()).equals(previous)) {
+      added = cities.get(previous.size());
+    } else if (cities.size() + 1 == previous.size()) {
+      int i = 0;
+      while (i < cities.size() && cities.get(i).equals(previous.get(i))) {
+        i++;
+      }
+      if (!cities.subList(i, cities.size()).equals(previous.subList(i + 1, previous.size()))) {
+        return false;
+      }
+      removed = previous.get(i);
+    } else {
+      return false;
+    }
+
+    // whatever still runs works on the old cities
+    runningContexts.values().forEach(SolveContext::cancel);
+    runningContexts.clear();
+    pendingImprovements.clear();
+    liveImprovements.clear();
+
+    for (int i = 0; i < algorithms.size(); i++) {
+      // a full solve of the new set beats an edit
+      TSPResult cached = resultCache.get(cities, cacheParameters(i));
+      if (cached != null) {
+        CompletableFuture<TSPResult> calculation = runningCalculations.get(i);
+        if (calculation != null) {
+          calculation.cancel(true);
+        }
+        showCached(i, cached);
+        continue;
+      }
+
+      TSPResult current = finishedResult(i);
+      if (current == null || current.getPath() == null) {
+        CompletableFuture<TSPResult> calculation = runningCalculations.get(i);
+        if (calculation != null) {
+          calculation.cancel(true);
+        }
+        startCalculation(i, cities);
+        continue;
+      }
+
+      TSPResult edited = added != null
+          ? tourEditor.insert(current, added)
+          : tourEditor.remove(current, removed);
+      runningCalculations.put(i, CompletableFuture.completedFuture(edited));
+      int edits = editsSinceSolve.merge(i, 1, Integer::sum);
+      if (resolveWorthwhile(i, edits, cities.size())) {
+        scheduleResolve(i, cities);
+      }
+    }
+
+    TSPResult selected = finishedResult(selectedAlgorithm);
+    if (selected != null) {
+      pathRenderer.renderPath(selected.getPath());
+    }
+    updateResultArea();
+    return true;
+  }
+
+  /*
+   * solving again is worth it when the solver is fast anyway, or when so many
+   * cities changed that the edited tour may have fallen behind what the
+   * solver would find
+   */
+  private boolean resolveWorthwhile(int algorithmIndex, int edits, int cityCount) {
+    long solveTime = solveTimes.getOrDefault(algorithmIndex, Long.MAX_VALUE);
+    return solveTime <= FAST_SOLVE_MS * 1_000_000 || edits * EDIT_RATIO >= cityCount;
+  }
+
+  /*
+   * full solve in the background once no edit came in for RESOLVE_DELAY_MS,
+   * every edit cancels it. its tour only replaces the edited one if it is
+   * shorter
+   */
+  private void scheduleResolve(int algorithmIndex, List<CityInfo> cities) {
+    final TSPAlgorithm algorithm = algorithms.get(algorithmIndex);
+    final boolean improve = improveTours;
+    final String parameters = cacheParameters(algorithmIndex);
+    SolveContext context = new SolveContext();
+    runningContexts.put(algorithmIndex, context);
+
+    CompletableFuture.supplyAsync(
+        () -> context.isCancelled() ? null : solve(algorithm, cities, context, improve, parameters),
+        CompletableFuture.delayedExecutor(RESOLVE_DELAY_MS, TimeUnit.MILLISECONDS))
+        .thenAcceptAsync(result -> {
+          if (result == null || runningContexts.get(algorithmIndex) != context) {
+            return; // cancelled by a later edit
+          }
+          runningContexts.remove(algorithmIndex);
+          solveTimes.put(algorithmIndex, result.getExecutionTime());
+          editsSinceSolve.remove(algorithmIndex);
+
+          TSPResult current = finishedResult(algorithmIndex);
+          if (result.getPath() != null
+              && (current == null || result.getPathLength() < current.getPathLength())) {
+            runningCalculations.put(algorithmIndex, CompletableFuture.completedFuture(result));
+            if (algorithmIndex == selectedAlgorithm) {
+              pathRenderer.renderPath(result.getPath());
+            }
+          }
+          updateResultArea();
+        }, Platform::runLater);
+  }
+
+  // result of a calculation that is done, null while it runs or if it failed
+  private TSPResult finishedResult(int algorithmIndex) {
+    CompletableFuture<TSPResult> calculation = runningCalculations.get(algorithmIndex);
+    if (calculation == null || !calculation.isDone() || calculation.isCompletedExceptionally()) {
+      return null;
+    }
+    return calculation.join();
+  }
+
   private String formatExecutionTime(long nanos) {
     if (nanos < 1_000_000) {
       return String.format("%d ns", nanos);
@@ -156,34 +443,53 @@ public class AlgorithmPanel extends VBox {
 
     // for each algorithm set the text output
     for (int i = 0; i < algorithms.size(); i++) {
-      CompletableFuture<AlgorithmResult> calculation = runningCalculations.get(i);
+      CompletableFuture<TSPResult> calculation = runningCalculations.get(i);
       if (calculation != null && calculation.isDone()) {
         try {
-          AlgorithmResult result = calculation.get();
+          TSPResult result = calculation.get();
+          int edits = editsSinceSolve.getOrDefault(i, 0);
           results.append(String.format(
-              "%s:\nPath Length: %.2f km\nTime: %s\nPath: %s\n\n",
+              "%s:\nPath Length: %.2f km\nTime: %s\n%sPath: %s\n\n",
               algorithms.get(i).getName(),
-              result.pathLength,
-              formatExecutionTime(result.executionTime),
-              formatPath(result.path)));
+              result.getPathLength(),
+              formatExecutionTime(result.getExecutionTime()),
+              edits > 0 ? String.format("Edited: %d cities since the last full solve\n", edits) : "",
+              formatPath(result.getPath())));
         } catch (Exception e) {
           results.append(String.format("%s: Calculation failed\n\n",
               algorithms.get(i).getName()));
         }
+      } else if (liveImprovements.containsKey(i)) {
+        Improvement improvement = liveImprovements.get(i);
+        results.append(String.format("%s: Calculating...\nBest so far: %.2f km after %s\n\n",
+            algorithms.get(i).getName(),
+            improvement.getPathLength(),
+            formatExecutionTime(improvement.getElapsedTime())));
       } else {
         results.append(String.format("%s: Calculating...\n\n",
             algorithms.get(i).getName()));
       }
     }
 
+    results.append("Result cache: ").append(resultCache);
     resultArea.setText(results.toString());
   }
 
   public void clear() {
     resultArea.clear();
     pathRenderer.clear();
+    cancelCalculations();
+    currentCities = new ArrayList<>();
+  }
+
+  // stops the running solvers so they free their threads right away
+  private void cancelCalculations() {
+    runningContexts.values().forEach(SolveContext::cancel);
+    runningContexts.clear();
     runningCalculations.values().forEach(future -> future.cancel(true));
     runningCalculations.clear();
-    currentCities.clear();
+    pendingImprovements.clear();
+    liveImprovements.clear();
+    editsSinceSolve.clear();
   }
 }
@@ -170,6 +170,10 @@ public class CityAutocompleteTextField extends VBox {
     }
   }
 
+  public CityData getCityData() {
+    return cityData;
+  }
+
   // shut down the executor service, and scheduled executer
   public void cleanup() {
     executorService.shutdownNow();
@@ -1,6 +1,7 @@
 package com.tsp.gui;
 
 import com.tsp.util.CityData.CityInfo;
+import java.util.List;
 
 import javafx.application.Application;
 import javafx.collections.FXCollections;
@@ -10,6 +11,7 @@ import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
@@ -28,10 +30,10 @@ public class MainView extends Application {
     root.setPadding(new Insets(10));
 
     setupWorldMap();
+    setupAlgorithmPanel();
     setupAlgorithmSelector();
     setupSelectedCitiesList();
     setupSearchBar();
-    setupAlgorithmPanel();
 
     VBox rightPanel = new VBox(10);
     rightPanel.setPadding(new Insets(10));
@@ -78,39 +80,24 @@ public class MainView extends Application {
     title.getStyleClass().add("section-title");
 
     ToggleGroup algorithmGroup = new ToggleGroup();
+    algorithmSelector.getChildren().add(title);
+
+    // one button per algorithm of the panel, at the same index
+    List<String> names = algorithmPanel.getAlgorithmNames();
+    for (int i = 0; i < names.size(); i++) {
+      final int algorithmIndex = i;
+      RadioButton button = new RadioButton(names.get(i));
+      button.setToggleGroup(algorithmGroup);
+      button.getStyleClass().add("algorithm-radio");
+      button.setSelected(i == 0);
+
+      button.setOnAction(e -> {
+        algorithmPanel.selectAlgorithm(algorithmIndex);
+        algorithmPanel.runAlgorithms(selectedCities);
+      });
 
-    RadioButton nearestNeighborBtn = new RadioButton("Modified Nearest Neighbor");
-    RadioButton branchAndBoundBtn = new RadioButton("Branch and Bound");
-    RadioButton antColonyBtn = new RadioButton("Ant Colony Optimization");
-
-    nearestNeighborBtn.setToggleGroup(algorithmGroup);
-    branchAndBoundBtn.setToggleGroup(algorithmGroup);
-    antColonyBtn.setToggleGroup(algorithmGroup);
-
-    nearestNeighborBtn.getStyleClass().add("algorithm-radio");
-    branchAndBoundBtn.getStyleClass().add("algorithm-radio");
-    antColonyBtn.getStyleClass().add("algorithm-radio");
-
-    nearestNeighborBtn.setSelected(true);
-
-    nearestNeighborBtn.setOnAction(e -> {
-      algorithmPanel.selectAlgorithm(0);
-      algorithmPanel.runAlgorithms(selectedCities);
-    });
-    branchAndBoundBtn.setOnAction(e -> {
-      algorithmPanel.selectAlgorithm(1);
-      algorithmPanel.runAlgorithms(selectedCities);
-    });
-    antColonyBtn.setOnAction(e -> {
-      algorithmPanel.selectAlgorithm(2);
-      algorithmPanel.runAlgorithms(selectedCities);
-    });
-
-    algorithmSelector.getChildren().addAll(
-        title,
-        nearestNeighborBtn,
-        branchAndBoundBtn,
-        antColonyBtn);
+      algorithmSelector.getChildren().add(button);
+    }
   }
 
   private void setupSelectedCitiesList() {
@@ -122,15 +109,27 @@ public class MainView extends Application {
     selectedCitiesList = new ListView<>(selectedCities);
     selectedCitiesList.setPrefHeight(300);
 
+    Button removeButton = new Button("Remove");
     Button clearButton = new Button("Clear All");
 
+    // the panel cuts the city out of the finished tours
+    removeButton.setOnAction(e -> {
+      CityInfo city = selectedCitiesList.getSelectionModel().getSelectedItem();
+      if (city != null) {
+        selectedCities.remove(city);
+        worldMap.removeCity(city);
+        algorithmPanel.runAlgorithms(selectedCities);
+      }
+    });
+
     clearButton.setOnAction(e -> {
-      algorithmPanel.pathRenderer.clear();
+      algorithmPanel.clear();
       selectedCities.clear();
       worldMap.clearCities();
     });
 
-    citiesContainer.getChildren().addAll(title, selectedCitiesList, clearButton);
+    HBox buttons = new HBox(10, removeButton, clearButton);
+    citiesContainer.getChildren().addAll(title, selectedCitiesList, buttons);
 
     algorithmSelector.getChildren().add(citiesContainer);
   }
@@ -139,17 +138,27 @@ public class MainView extends Application {
     searchBar = new CityAutocompleteTextField();
 
     // once returned from search
-    searchBar.setOnCitySelected((name, lat, lon) -> {
-      CityInfo newCity = new CityInfo(name, lon, lat);
-      // match by name so we cant input the same city twice
-      if (!selectedCities.stream().anyMatch(city -> city.getName().equals(name))) {
-        selectedCities.add(newCity);
-        worldMap.addCity(newCity);
-        algorithmPanel.runAlgorithms(selectedCities);
+    searchBar.setOnCitySelected(this::addCity);
+
+    // clicking on the map adds the closest known city
+    worldMap.setOnMapClicked((lat, lon) -> {
+      CityInfo nearest = searchBar.getCityData().findNearestCity(lat, lon);
+      if (nearest != null) {
+        addCity(nearest.getName(), nearest.getLatitude(), nearest.getLongitude());
       }
     });
   }
 
+  private void addCity(String name, double lat, double lon) {
+    CityInfo newCity = new CityInfo(name, lon, lat);
+    // match by name so we cant input the same city twice
+    if (!selectedCities.stream().anyMatch(city -> city.getName().equals(name))) {
+      selectedCities.add(newCity);
+      worldMap.addCity(newCity);
+      algorithmPanel.runAlgorithms(selectedCities);
+    }
+  }
+
   private void setupAlgorithmPanel() {
     algorithmPanel = new AlgorithmPanel(worldMap);
   }
@@ -17,12 +17,19 @@ public class PathRenderer extends Group {
     this.worldMap = worldMap;
   }
 
-  // draw path from every point to another
+  /*
+   * draw path from every point to another. the lines of the last path are
+   * reused, live updates of a running algorithm redraw the path every frame
+   */
   public void renderPath(List<CityInfo> path) {
-    getChildren().clear();
-
-    if (path == null || path.size() < 2)
+    if (path == null || path.size() < 2) {
+      getChildren().clear();
       return;
+    }
+
+    if (getChildren().size() > path.size()) {
+      getChildren().remove(path.size(), getChildren().size());
+    }
 
     for (int i = 0; i < path.size(); i++) {
       CityInfo city1 = path.get(i);
@@ -31,11 +38,19 @@ public class PathRenderer extends Group {
       Point2D point1 = worldMap.geoToPixel(city1.getLatitude(), city1.getLongitude());
       Point2D point2 = worldMap.geoToPixel(city2.getLatitude(), city2.getLongitude());
 
-      Line line = new Line(point1.getX(), point1.getY(), point2.getX(), point2.getY());
-      line.setStroke(pathColor);
-      line.setStrokeWidth(2);
-
-      getChildren().add(line);
+      Line line;
+      if (i < getChildren().size()) {
+        line = (Line) getChildren().get(i);
+      } else {
+        line = new Line();
+        line.setStroke(pathColor);
+        line.setStrokeWidth(2);
+        getChildren().add(line);
+      }
+      line.setStartX(point1.getX());
+      line.setStartY(point1.getY());
+      line.setEndX(point2.getX());
+      line.setEndY(point2.getY());
     }
   }
 
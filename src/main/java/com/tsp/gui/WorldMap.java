@@ -16,6 +16,17 @@ public class WorldMap extends Pane {
   private double baseWidth = 800;
   private double baseHeight = baseWidth / MAP_ASPECT_RATIO;
 
+  // callback for clicks on the map
+  private MapClickedCallback mapClickedCallback;
+
+  public interface MapClickedCallback {
+    void onMapClicked(double lat, double lon);
+  }
+
+  public void setOnMapClicked(MapClickedCallback callback) {
+    this.mapClickedCallback = callback;
+  }
+
   public WorldMap() {
     /*
      * add image and check if image has been found bc there is a problem with the
@@ -48,6 +59,18 @@ public class WorldMap extends Pane {
 
       repositionAllPoints();
     });
+
+    // translate clicks inside the image back to coordinates
+    setOnMouseClicked(event -> {
+      if (mapClickedCallback == null || !event.isStillSincePress()) {
+        return;
+      }
+      double x = (event.getX() - mapImageView.getTranslateX()) / mapImageView.getFitWidth();
+      double y = (event.getY() - mapImageView.getTranslateY()) / mapImageView.getFitHeight();
+      if (x >= 0 && x <= 1 && y >= 0 && y <= 1) {
+        mapClickedCallback.onMapClicked(90 - y * 180.0, x * 360.0 - 180);
+      }
+    });
   }
 
   // translate coordinates to pixels on the Pane
@@ -82,6 +105,10 @@ public class WorldMap extends Pane {
     getChildren().add(cityPoint);
   }
 
+  public void removeCity(CityInfo city) {
+    getChildren().removeIf(node -> node instanceof Circle && node.getUserData() == city);
+  }
+
   public void clearCities() {
     getChildren().removeIf(node -> node instanceof Circle);
   }
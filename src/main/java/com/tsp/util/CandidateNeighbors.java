@@ -0,0 +1,102 @@
+package com.tsp.util;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*
+ * sparse distance oracle for large instances. for every city only the k
+ * nearest other cities (its candidate neighbors) are stored, sorted by
+ * distance, in two flat arrays:
+ *
+ * neighbors[i * k + r] = index of the r-th nearest city of i
+ * distances[i * k + r] = distance to that city
+ *
+ * that is O(n*k) memory instead of O(n^2). any other distance is computed on
+ * demand from the precomputed per-city terms of the metric, so this can be
+ * used everywhere a DistanceMatrix is expected. good tours almost only use
+ * edges between candidate neighbors, so solvers can restrict their moves to
+ * these lists
+ */
+public class CandidateNeighbors implements DistanceMatrix {
+  private final int n;
+  private final int k;
+  private final int[] neighbors;
+  private final double[] distances;
+  private final DistanceMatrix onDemand;
+
+  private CandidateNeighbors(int n, int k, DistanceMatrix onDemand) {
+    this.n = n;
+    this.k = k;
+    this.neighbors = new int[n * k];
+    this.distances = new double[n * k];
+    this.onDemand = onDemand;
+  }
+
+  /*
+   * the neighbors are found with a k-d tree over the cities, which ranks them
+   * like the great circle distance. the stored distances use the given metric
+   */
+  public static CandidateNeighbors build(List<CityInfo> cities, int k, DistanceMetric metric) {
+    return build(cities, SpatialIndex.build(cities), k, metric);
+  }
+
+  // same as above with an existing index over exactly these cities
+  public static CandidateNeighbors build(List<CityInfo> cities, SpatialIndex index, int k,
+      DistanceMetric metric) {
+    int n = cities.size();
+    int size = Math.max(0, Math.min(k, n - 1));
+    CandidateNeighbors candidates = new CandidateNeighbors(n, size, metric.prepare(cities));
+
+    IntStream.range(0, n).parallel().forEach(i -> {
+      int[] nearest = index.nearestNeighbors(i, size);
+      int offset = i * size;
+      for (int r = 0; r < size; r++) {
+        candidates.neighbors[offset + r] = nearest[r];
+        candidates.distances[offset + r] = candidates.onDemand.get(i, nearest[r]);
+      }
+    });
+
+    return candidates;
+  }
+
+  // number of candidate neighbors per city
+  public int getK() {
+    return k;
+  }
+
+  // r-th nearest city of i, r < getK()
+  public int neighbor(int i, int r) {
+    return neighbors[i * k + r];
+  }
+
+  public double neighborDistance(int i, int r) {
+    return distances[i * k + r];
+  }
+
+  public boolean isCandidate(int i, int j) {
+    int offset = i * k;
+    for (int r = 0; r < k; r++) {
+      if (neighbors[offset + r] == j) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int size() {
+    return n;
+  }
+
+  @Override
+  public double get(int i, int j) {
+    int offset = i * k;
+    for (int r = 0; r < k; r++) {
+      if (neighbors[offset + r] == j) {
+        return distances[offset + r];
+      }
+    }
+    return onDemand.get(i, j);
+  }
+}
@@ -0,0 +1,75 @@
+package com.tsp.util;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.List;
+
+/*
+ * length of the straight line between two cities through the earth. every
+ * city is turned into a unit vector once, after that a distance is just a
+ * few multiplications and one sqrt. the chord is always a bit shorter than the
+ * great circle distance but orders cities the same way, which is all that
+ * heuristics like nearest neighbor or candidate lists need
+ */
+public class ChordMetric implements DistanceMetric {
+  @Override
+  public String getName() {
+    return "Chord";
+  }
+
+  @Override
+  public double distance(CityInfo city1, CityInfo city2) {
+    double[] a = unitVector(city1);
+    double[] b = unitVector(city2);
+    return distance(a[0], a[1], a[2], b[0], b[1], b[2]);
+  }
+
+  @Override
+  public DistanceMatrix prepare(List<CityInfo> cities) {
+    int n = cities.size();
+    double[] x = new double[n];
+    double[] y = new double[n];
+    double[] z = new double[n];
+
+    for (int i = 0; i < n; i++) {
+      double[] v = unitVector(cities.get(i));
+      x[i] = v[0];
+      y[i] = v[1];
+      z[i] = v[2];
+    }
+
+    return new DistanceMatrix() {
+      @Override
+      public int size() {
+        return n;
+      }
+
+      @Override
+      public double get(int i, int j) {
+        return distance(x[i], y[i], z[i], x[j], y[j], z[j]);
+      }
+
+      @Override
+      public void getRow(int i, int from, int to, double[] out, int offset) {
+        DistanceKernel.INSTANCE.chordRow(x, y, z, i, from, to, out, offset);
+      }
+    };
+  }
+
+  static double[] unitVector(CityInfo city) {
+    return unitVector(city.getLatitude(), city.getLongitude());
+  }
+
+  static double[] unitVector(double latitude, double longitude) {
+    double lat = Math.toRadians(latitude);
+    double lon = Math.toRadians(longitude);
+    double cosLat = Math.cos(lat);
+    return new double[] { cosLat * Math.cos(lon), cosLat * Math.sin(lon), Math.sin(lat) };
+  }
+
+  static double distance(double x1, double y1, double z1, double x2, double y2, double z2) {
+    double dx = x1 - x2;
+    double dy = y1 - y2;
+    double dz = z1 - z2;
+    return HaversineMetric.EARTH_RADIUS_KM * Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+}
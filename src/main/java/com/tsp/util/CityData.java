@@ -6,6 +6,7 @@ import java.io.InputStreamReader;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -64,6 +65,9 @@ public class CityData {
   private final List<CityInfo> cities = new ArrayList<>();
   private static final int MAX_SUGGESTIONS = 10;
 
+  // built on first use, the city list doesnt change after loading
+  private SpatialIndex spatialIndex;
+
   public void loadFromCSV(String resourcePath) {
     /*
      * - getClass().getResourceAsStream(resourcePath) opens the CSV file as an input
@@ -137,4 +141,41 @@ public class CityData {
         // collect to list
         .collect(Collectors.toList());
   }
+
+  public List<CityInfo> getCities() {
+    return Collections.unmodifiableList(cities);
+  }
+
+  /*
+   * k-d tree over all loaded cities for proximity queries, the indices it
+   * returns refer to getCities()
+   */
+  public synchronized SpatialIndex getSpatialIndex() {
+    if (spatialIndex == null) {
+      spatialIndex = SpatialIndex.build(cities);
+    }
+    return spatialIndex;
+  }
+
+  // the loaded city closest to the given coordinates, null if nothing is loaded
+  public CityInfo findNearestCity(double latitude, double longitude) {
+    int index = getSpatialIndex().nearest(latitude, longitude);
+    return index < 0 ? null : cities.get(index);
+  }
+
+  public List<CityInfo> findNearestCities(double latitude, double longitude, int k) {
+    return toCities(getSpatialIndex().nearest(latitude, longitude, k));
+  }
+
+  public List<CityInfo> findCitiesWithinRadius(double latitude, double longitude, double radiusKm) {
+    return toCities(getSpatialIndex().withinRadius(latitude, longitude, radiusKm));
+  }
+
+  private List<CityInfo> toCities(int[] indices) {
+    List<CityInfo> result = new ArrayList<>(indices.length);
+    for (int index : indices) {
+      result.add(cities.get(index));
+    }
+    return result;
+  }
 }
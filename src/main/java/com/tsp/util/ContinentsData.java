@@ -18,11 +18,20 @@ public class ContinentsData {
     private final String subRegion;
     private final String iso2;
 
-    public ContinentInfo(String country, String continent, String subRegion, String iso2) {
+    // small ints that are equal exactly when the names are, cheap to compare
+    private final int countryId;
+    private final int subRegionId;
+    private final int continentId;
+
+    public ContinentInfo(String country, String continent, String subRegion, String iso2,
+        int countryId, int subRegionId, int continentId) {
       this.country = country;
       this.continent = continent;
       this.subRegion = subRegion;
       this.iso2 = iso2;
+      this.countryId = countryId;
+      this.subRegionId = subRegionId;
+      this.continentId = continentId;
     }
 
     public String getCountry() {
@@ -41,14 +50,38 @@ public class ContinentsData {
       return iso2;
     }
 
+    public int getCountryId() {
+      return countryId;
+    }
+
+    public int getSubRegionId() {
+      return subRegionId;
+    }
+
+    public int getContinentId() {
+      return continentId;
+    }
+
     @Override
     public String toString() {
       return String.format("%s (%s, %s)", country, continent, subRegion);
     }
   }
 
+  private static final String DEFAULT_RESOURCE = "/data/continents.csv";
+
   private final Map<String, ContinentInfo> countryToContinentMap = new HashMap<>();
 
+  // the bundled data never changes, so everyone can share one instance
+  private static class SharedHolder {
+    static final ContinentsData INSTANCE = new ContinentsData(DEFAULT_RESOURCE);
+  }
+
+  // loaded on first use
+  public static ContinentsData getShared() {
+    return SharedHolder.INSTANCE;
+  }
+
   public ContinentsData(String resourcePath) {
     try (InputStream is = getClass().getResourceAsStream(resourcePath);
         InputStreamReader isr = new InputStreamReader(is);
@@ -57,6 +90,11 @@ public class ContinentsData {
       // skip header
       reader.readNext();
 
+      // ids in the order the names first show up
+      Map<String, Integer> countryIds = new HashMap<>();
+      Map<String, Integer> subRegionIds = new HashMap<>();
+      Map<String, Integer> continentIds = new HashMap<>();
+
       String[] line;
       while ((line = reader.readNext()) != null) {
         try {
@@ -67,7 +105,10 @@ public class ContinentsData {
           String continent = line[5].trim(); // region in CSV
           String subRegion = line[6].trim();
 
-          countryToContinentMap.put(iso2, new ContinentInfo(country, continent, subRegion, iso2));
+          countryToContinentMap.put(iso2, new ContinentInfo(country, continent, subRegion, iso2,
+              countryIds.computeIfAbsent(country, name -> countryIds.size()),
+              subRegionIds.computeIfAbsent(subRegion, name -> subRegionIds.size()),
+              continentIds.computeIfAbsent(continent, name -> continentIds.size())));
         } catch (ArrayIndexOutOfBoundsException e) {
           System.err.println("Error parsing line: " + String.join(",", line));
         }
@@ -0,0 +1,172 @@
+package com.tsp.util;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * bounded LRU cache for pairwise distances that is shared between all
+ * algorithms and runs. a city is identified by its coordinates, so the same
+ * place added again (or created as a new CityInfo) still hits the cache.
+ *
+ * the entries are spread over several segments, each one an access ordered
+ * LinkedHashMap behind its own lock, so threads building a matrix in parallel
+ * rarely wait for each other. eviction is LRU per segment
+ */
+public class DistanceCache {
+  private static final int SEGMENTS = 16;
+  private static final int HEADROOM = 8; // a segment holds 1/HEADROOM more than its share
+
+  private final int capacity;
+  private final Segment[] segments = new Segment[SEGMENTS];
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  // the smaller city (by coordinates) always comes first so that d(a,b) and
+  // d(b,a) share one entry
+  private record PairKey(double lat1, double lon1, double lat2, double lon2) {
+    static PairKey of(CityInfo city1, CityInfo city2) {
+      int order = Double.compare(city1.getLatitude(), city2.getLatitude());
+      if (order == 0) {
+        order = Double.compare(city1.getLongitude(), city2.getLongitude());
+      }
+      if (order > 0) {
+        CityInfo tmp = city1;
+        city1 = city2;
+        city2 = tmp;
+      }
+      return new PairKey(city1.getLatitude(), city1.getLongitude(),
+          city2.getLatitude(), city2.getLongitude());
+    }
+  }
+
+  private class Segment extends LinkedHashMap<PairKey, Double> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxEntries;
+
+    Segment(int maxEntries) {
+      super(16, 0.75f, true); // access order for LRU
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<PairKey, Double> eldest) {
+      if (size() > maxEntries) {
+        evictions.increment();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  public DistanceCache(int capacity) {
+    if (capacity < SEGMENTS) {
+      throw new IllegalArgumentException("Capacity must be at least " + SEGMENTS);
+    }
+    this.capacity = capacity;
+    /*
+     * the pairs never spread exactly evenly over the segments. without the
+     * headroom the fuller ones would already evict while the whole cache is
+     * below its capacity, and a matrix that fits would miss on the next build
+     */
+    int share = capacity / SEGMENTS;
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(share + share / HEADROOM);
+    }
+  }
+
+  // returns the cached distance or computes and stores it with the given metric
+  public double getDistance(CityInfo city1, CityInfo city2, DistanceMetric metric) {
+    double distance = lookup(city1, city2);
+    if (Double.isNaN(distance)) {
+      // computed outside of the lock, two threads may compute the same pair once
+      distance = metric.distance(city1, city2);
+      put(city1, city2, distance);
+    }
+    return distance;
+  }
+
+  // returns the cached distance or NaN if the pair is not cached
+  public double lookup(CityInfo city1, CityInfo city2) {
+    PairKey key = PairKey.of(city1, city2);
+    Segment segment = segmentFor(key);
+
+    Double cached;
+    synchronized (segment) {
+      cached = segment.get(key);
+    }
+    if (cached == null) {
+      misses.increment();
+      return Double.NaN;
+    }
+    hits.increment();
+    return cached;
+  }
+
+  public void put(CityInfo city1, CityInfo city2, double distance) {
+    PairKey key = PairKey.of(city1, city2);
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      segment.put(key, distance);
+    }
+  }
+
+  private Segment segmentFor(PairKey key) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return segments[h & (SEGMENTS - 1)];
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public double getHitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  public void clear() {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d/%d entries, %d hits, %d misses (%.1f%%), %d evictions",
+        size(), capacity, getHits(), getMisses(), getHitRate() * 100, getEvictions());
+  }
+}
@@ -3,77 +3,22 @@ package com.tsp.util;
 import com.tsp.util.CityData.CityInfo;
 import java.util.List;
 
-// Quelle: https://www.baeldung.com/java-find-distance-between-points
 public class DistanceCalculator {
-  // WGS-84 Earth parameters
-  private static final double EARTH_RADIUS_A = 6378137.0; // Equatorial radius in meters
-  private static final double EARTH_RADIUS_B = 6356752.314245; // Polar radius in meters
-  private static final double FLATTENING = 1 / 298.257223563; // Earth's flattening
-
+  /*
+   * vincenty distances are cached across runs, so when a city is added to the
+   * selection only the pairs with the new city have to be calculated. ~250k
+   * pairs are enough for about 700 cities and take roughly 30 MB (the
+   * segments of the cache may hold an eighth more, see DistanceCache)
+   */
+  private static final int CACHE_CAPACITY = 1 << 18;
+  private static final DistanceCache CACHE = new DistanceCache(CACHE_CAPACITY);
+
+  // exact distance in km between two cities, see VincentyMetric
   public static double calculateDistance(CityInfo city1, CityInfo city2) {
-    double lat1 = Math.toRadians(city1.getLatitude());
-    double lon1 = Math.toRadians(city1.getLongitude());
-    double lat2 = Math.toRadians(city2.getLatitude());
-    double lon2 = Math.toRadians(city2.getLongitude());
-
-    // Vincenty formula
-    double L = lon2 - lon1;
-    double U1 = Math.atan((1 - FLATTENING) * Math.tan(lat1));
-    double U2 = Math.atan((1 - FLATTENING) * Math.tan(lat2));
-    double sinU1 = Math.sin(U1);
-    double cosU1 = Math.cos(U1);
-    double sinU2 = Math.sin(U2);
-    double cosU2 = Math.cos(U2);
-
-    double lambda = L;
-    double lambdaP;
-    double iterLimit = 100;
-    double cosSqAlpha;
-    double sinSigma;
-    double cos2SigmaM;
-    double cosSigma;
-    double sigma;
-    double sinLambda;
-    double cosLambda;
-
-    do {
-      sinLambda = Math.sin(lambda);
-      cosLambda = Math.cos(lambda);
-      sinSigma = Math.sqrt(
-          (cosU2 * sinLambda) * (cosU2 * sinLambda) +
-              (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda) *
-                  (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
-
-      if (sinSigma == 0)
-        return 0;
-
-      cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
-      sigma = Math.atan2(sinSigma, cosSigma);
-      double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
-      cosSqAlpha = 1 - sinAlpha * sinAlpha;
-      cos2SigmaM = cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha;
-
-      if (Double.isNaN(cos2SigmaM))
-        cos2SigmaM = 0;
-
-      double C = FLATTENING / 16 * cosSqAlpha * (4 + FLATTENING * (4 - 3 * cosSqAlpha));
-      lambdaP = lambda;
-      lambda = L + (1 - C) * FLATTENING * sinAlpha *
-          (sigma + C * sinSigma * (cos2SigmaM + C * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
-
-    } while (Math.abs(lambda - lambdaP) > 1e-12 && --iterLimit > 0);
-
-    if (iterLimit == 0)
+    if (city1 == city2) {
       return 0;
-
-    double uSq = cosSqAlpha * (EARTH_RADIUS_A * EARTH_RADIUS_A - EARTH_RADIUS_B * EARTH_RADIUS_B)
-        / (EARTH_RADIUS_B * EARTH_RADIUS_B);
-    double A = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
-    double B = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
-    double deltaSigma = B * sinSigma * (cos2SigmaM + B / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) -
-        B / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
-
-    return (EARTH_RADIUS_B * A * (sigma - deltaSigma)) / 1000.0; // Convert to kilometers
+    }
+    return CACHE.getDistance(city1, city2, DistanceMetric.VINCENTY);
   }
 
   public static double calculatePathLength(List<CityInfo> path) {
@@ -86,4 +31,43 @@ public class DistanceCalculator {
     }
     return length;
   }
+
+  /*
+   * on demand vincenty distances for a city list that go through the shared
+   * cache, misses are computed from the precomputed per-city terms
+   */
+  public static DistanceMatrix cachedMatrix(List<CityInfo> cities) {
+    DistanceMatrix vincenty = DistanceMetric.VINCENTY.prepare(cities);
+
+    return new DistanceMatrix() {
+      @Override
+      public int size() {
+        return vincenty.size();
+      }
+
+      @Override
+      public double get(int i, int j) {
+        if (i == j) {
+          return 0;
+        }
+        CityInfo city1 = cities.get(i);
+        CityInfo city2 = cities.get(j);
+        double distance = CACHE.lookup(city1, city2);
+        if (Double.isNaN(distance)) {
+          distance = vincenty.get(i, j);
+          CACHE.put(city1, city2, distance);
+        }
+        return distance;
+      }
+    };
+  }
+
+  // true if all pairs of a list with n cities fit into the cache
+  public static boolean fitsInCache(int n) {
+    return (long) n * (n - 1) / 2 <= CACHE_CAPACITY;
+  }
+
+  public static DistanceCache getCache() {
+    return CACHE;
+  }
 }
@@ -0,0 +1,39 @@
+package com.tsp.util;
+
+/*
+ * batch distance computation "from city i to the cities from..to-1" over
+ * structure of arrays coordinates. used to fill whole matrix rows at once.
+ *
+ * if the jdk.incubator.vector module is available (run with
+ * --add-modules jdk.incubator.vector) the SIMD implementation is used,
+ * otherwise a plain scalar loop. the vector sin, asin and sqrt are not bit
+ * exact with Math, so the two can differ in the last bits, and so can ties
+ * between cities that the solvers break by these values
+ */
+interface DistanceKernel {
+  DistanceKernel INSTANCE = select();
+
+  // haversine distances in km, see HaversineMetric
+  void haversineRow(double[] lat, double[] lon, double[] cosLat, int i, int from, int to,
+      double[] out, int offset);
+
+  // chord distances in km of unit vectors, see ChordMetric
+  void chordRow(double[] x, double[] y, double[] z, int i, int from, int to,
+      double[] out, int offset);
+
+  String getName();
+
+  private static DistanceKernel select() {
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        // loaded by name so that this class never links against the vector api
+        return (DistanceKernel) Class.forName("com.tsp.util.VectorDistanceKernel")
+            .getDeclaredConstructor()
+            .newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        System.err.println("Vector API not usable, using scalar distance kernel: " + e);
+      }
+    }
+    return new ScalarDistanceKernel();
+  }
+}
@@ -0,0 +1,18 @@
+package com.tsp.util;
+
+/*
+ * read only access to the pairwise distances of a city list, indexed the same
+ * way as the list the matrix was built from
+ */
+public interface DistanceMatrix {
+  int size();
+
+  double get(int i, int j);
+
+  // distances from city i to the cities from..to-1, written to out starting at offset
+  default void getRow(int i, int from, int to, double[] out, int offset) {
+    for (int j = from; j < to; j++) {
+      out[offset + j - from] = get(i, j);
+    }
+  }
+}
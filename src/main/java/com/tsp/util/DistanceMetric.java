@@ -0,0 +1,25 @@
+package com.tsp.util;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.List;
+
+/*
+ * a way of measuring the distance between two cities. prepare() does the
+ * per-city work (radians, trigonometry, unit vectors) once and returns a
+ * matrix that computes the pairwise distances on demand from those
+ * precomputed values
+ */
+public interface DistanceMetric {
+  // exact ellipsoid distance, used for all reported path lengths
+  DistanceMetric VINCENTY = new VincentyMetric();
+  // great circle distance on a sphere, off by up to ~0.5% compared to vincenty
+  DistanceMetric HAVERSINE = new HaversineMetric();
+  // straight line through the earth, cheapest and ranks cities like haversine
+  DistanceMetric CHORD = new ChordMetric();
+
+  String getName();
+
+  double distance(CityInfo city1, CityInfo city2);
+
+  DistanceMatrix prepare(List<CityInfo> cities);
+}
@@ -0,0 +1,62 @@
+package com.tsp.util;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.List;
+
+// great circle distance on a sphere with the mean earth radius
+public class HaversineMetric implements DistanceMetric {
+  static final double EARTH_RADIUS_KM = 6371.0088;
+
+  @Override
+  public String getName() {
+    return "Haversine";
+  }
+
+  @Override
+  public double distance(CityInfo city1, CityInfo city2) {
+    double lat1 = Math.toRadians(city1.getLatitude());
+    double lat2 = Math.toRadians(city2.getLatitude());
+    return distance(lat1, Math.toRadians(city1.getLongitude()), Math.cos(lat1),
+        lat2, Math.toRadians(city2.getLongitude()), Math.cos(lat2));
+  }
+
+  @Override
+  public DistanceMatrix prepare(List<CityInfo> cities) {
+    int n = cities.size();
+    double[] lat = new double[n];
+    double[] lon = new double[n];
+    double[] cosLat = new double[n];
+
+    for (int i = 0; i < n; i++) {
+      CityInfo city = cities.get(i);
+      lat[i] = Math.toRadians(city.getLatitude());
+      lon[i] = Math.toRadians(city.getLongitude());
+      cosLat[i] = Math.cos(lat[i]);
+    }
+
+    return new DistanceMatrix() {
+      @Override
+      public int size() {
+        return n;
+      }
+
+      @Override
+      public double get(int i, int j) {
+        return distance(lat[i], lon[i], cosLat[i], lat[j], lon[j], cosLat[j]);
+      }
+
+      @Override
+      public void getRow(int i, int from, int to, double[] out, int offset) {
+        DistanceKernel.INSTANCE.haversineRow(lat, lon, cosLat, i, from, to, out, offset);
+      }
+    };
+  }
+
+  static double distance(double lat1, double lon1, double cosLat1,
+      double lat2, double lon2, double cosLat2) {
+    double sinDLat = Math.sin((lat2 - lat1) / 2);
+    double sinDLon = Math.sin((lon2 - lon1) / 2);
+    double a = sinDLat * sinDLat + cosLat1 * cosLat2 * sinDLon * sinDLon;
+    return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+  }
+}
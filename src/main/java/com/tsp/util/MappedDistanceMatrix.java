@@ -0,0 +1,285 @@
+package com.tsp.util;
+
+import com.tsp.util.CityData.CityInfo;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/*
+ * distance matrix stored in a memory mapped file instead of the heap. it uses
+ * the same upper triangle layout as PackedDistanceMatrix, after a small header:
+ *
+ * magic (int) | version (int) | n (int) | bytes per entry (int) | hash (long)
+ *
+ * the file name is derived from a hash of the city coordinates and the metric,
+ * so the matrix for an instance is written once and every later run (also in
+ * other JVMs on the same machine) just maps the existing file. the data lives
+ * in the page cache, not in the heap, so the GC never has to look at it.
+ *
+ * the files of all instances together are kept below a size cap: opening a
+ * file marks it as recently used (modification time), and after a new one is
+ * written the least recently used other ones are deleted until the directory
+ * fits again.
+ *
+ * a single mapping is limited to 2 GB, so the file is mapped in chunks
+ */
+public class MappedDistanceMatrix implements DistanceMatrix {
+  public enum Precision {
+    FLOAT(4),
+    DOUBLE(8);
+
+    final int bytes;
+
+    Precision(int bytes) {
+      this.bytes = bytes;
+    }
+  }
+
+  private static final int MAGIC = 0x5453504d; // "TSPM"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 24;
+  private static final int CHUNK_SHIFT = 30; // 1 GB per mapping
+
+  private final int n;
+  private final Precision precision;
+  private final MappedByteBuffer[] chunks;
+
+  private MappedDistanceMatrix(int n, Precision precision, MappedByteBuffer[] chunks) {
+    this.n = n;
+    this.precision = precision;
+    this.chunks = chunks;
+  }
+
+  /*
+   * maps the matrix file for these cities from the directory, computes and
+   * writes it first if it doesnt exist yet. maxDirectoryBytes caps the matrix
+   * files in the directory, the new one is always kept
+   */
+  public static MappedDistanceMatrix open(List<CityInfo> cities, DistanceMetric metric,
+      Path directory, Precision precision, long maxDirectoryBytes) throws IOException {
+    int n = cities.size();
+    long hash = hash(cities, metric, precision);
+    Path file = directory.resolve(String.format("matrix-%d-%016x.bin", n, hash));
+
+    if (Files.exists(file)) {
+      try {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      } catch (IOException e) {
+        // only the eviction order suffers
+      }
+    } else {
+      Files.createDirectories(directory);
+      write(metric.prepare(cities), file, hash, precision);
+      trim(directory, maxDirectoryBytes, file);
+    }
+
+    return map(file, n, hash, precision);
+  }
+
+  // deletes the least recently used matrix files until the rest fits into maxBytes
+  private static void trim(Path directory, long maxBytes, Path keep) throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (Stream<Path> list = Files.list(directory)) {
+      list.filter(path -> path.getFileName().toString().matches("matrix-.*\\.bin"))
+          .forEach(files::add);
+    }
+
+    Map<Path, FileTime> times = new HashMap<>();
+    Map<Path, Long> sizes = new HashMap<>();
+    long total = 0;
+    for (Path path : files) {
+      try {
+        times.put(path, Files.getLastModifiedTime(path));
+        sizes.put(path, Files.size(path));
+        total += sizes.get(path);
+      } catch (IOException e) {
+        // deleted by another process in the meantime
+        times.put(path, FileTime.fromMillis(0));
+        sizes.put(path, 0L);
+      }
+    }
+
+    files.sort(Comparator.comparing(times::get));
+    for (Path path : files) {
+      if (total <= maxBytes) {
+        break;
+      }
+      if (path.equals(keep)) {
+        continue;
+      }
+      try {
+        // a process that still maps it keeps its mapping
+        Files.deleteIfExists(path);
+        total -= sizes.get(path);
+      } catch (IOException e) {
+        System.err.println("Could not delete distance matrix file " + path + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private static void write(DistanceMatrix source, Path file, long hash, Precision precision)
+      throws IOException {
+    int n = source.size();
+
+    // write to a temporary file and move it in place when complete, so no
+    // other process ever maps a half written matrix
+    // the temporary file is deleted whatever happens, a failed write (disk
+    // full, an exception in the fill) would otherwise leave gigabytes behind.
+    // after a successful move it is gone already, unless someone else has
+    // written the same matrix in the meantime
+    Path tmp = Files.createTempFile(file.getParent(), "matrix-", ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(tmp,
+          StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(precision.bytes).putLong(hash);
+        header.flip();
+        channel.write(header, 0);
+
+        MappedByteBuffer[] chunks = mapChunks(channel, FileChannel.MapMode.READ_WRITE,
+            dataSize(n, precision));
+        MappedDistanceMatrix matrix = new MappedDistanceMatrix(n, precision, chunks);
+
+        // same balanced parallel fill as PackedDistanceMatrix
+        IntStream.range(0, (n + 1) / 2).parallel().forEach(k -> {
+          matrix.fillRow(source, k);
+          if (n - 1 - k != k) {
+            matrix.fillRow(source, n - 1 - k);
+          }
+        });
+
+        for (MappedByteBuffer chunk : chunks) {
+          chunk.force();
+        }
+      }
+
+      Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static MappedDistanceMatrix map(Path file, int n, long hash, Precision precision)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+      channel.read(header, 0);
+      header.flip();
+
+      if (header.remaining() < HEADER_SIZE
+          || header.getInt() != MAGIC
+          || header.getInt() != VERSION
+          || header.getInt() != n
+          || header.getInt() != precision.bytes
+          || header.getLong() != hash
+          || channel.size() < HEADER_SIZE + dataSize(n, precision)) {
+        throw new IOException("Invalid distance matrix file: " + file);
+      }
+
+      // the mappings stay valid after the channel is closed
+      return new MappedDistanceMatrix(n, precision,
+          mapChunks(channel, FileChannel.MapMode.READ_ONLY, dataSize(n, precision)));
+    }
+  }
+
+  private static MappedByteBuffer[] mapChunks(FileChannel channel, FileChannel.MapMode mode,
+      long dataSize) throws IOException {
+    long chunkSize = 1L << CHUNK_SHIFT;
+    int count = (int) Math.max(1, (dataSize + chunkSize - 1) / chunkSize);
+    MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+
+    for (int c = 0; c < count; c++) {
+      long offset = c * chunkSize;
+      long size = Math.min(chunkSize, dataSize - offset);
+      chunks[c] = channel.map(mode, HEADER_SIZE + offset, Math.max(0, size));
+      chunks[c].order(ByteOrder.nativeOrder());
+    }
+
+    return chunks;
+  }
+
+  private static long dataSize(int n, Precision precision) {
+    return (long) n * (n - 1) / 2 * precision.bytes;
+  }
+
+  // hash over everything that changes the content of the matrix
+  private static long hash(List<CityInfo> cities, DistanceMetric metric, Precision precision) {
+    long h = 0xcbf29ce484222325L;
+    h = mix(h, metric.getName().hashCode());
+    h = mix(h, precision.bytes);
+    h = mix(h, cities.size());
+    for (CityInfo city : cities) {
+      h = mix(h, Double.doubleToLongBits(city.getLatitude()));
+      h = mix(h, Double.doubleToLongBits(city.getLongitude()));
+    }
+    return h;
+  }
+
+  private static long mix(long h, long value) {
+    h ^= value;
+    h *= 0x100000001b3L;
+    return h ^ (h >>> 29);
+  }
+
+  private void fillRow(DistanceMatrix source, int i) {
+    double[] row = new double[n - i - 1];
+    source.getRow(i, i + 1, n, row, 0);
+
+    long offset = rowOffset(i);
+    for (int j = i + 1; j < n; j++) {
+      long position = (offset + j) * precision.bytes;
+      MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+      int index = (int) (position & ((1L << CHUNK_SHIFT) - 1));
+      if (precision == Precision.FLOAT) {
+        chunk.putFloat(index, (float) row[j - i - 1]);
+      } else {
+        chunk.putDouble(index, row[j - i - 1]);
+      }
+    }
+  }
+
+  // index of d(i,0) if the row was stored completely, see PackedDistanceMatrix
+  private long rowOffset(int i) {
+    return (long) i * (2L * n - i - 1) / 2 - i - 1;
+  }
+
+  public Precision getPrecision() {
+    return precision;
+  }
+
+  @Override
+  public int size() {
+    return n;
+  }
+
+  @Override
+  public double get(int i, int j) {
+    if (i == j) {
+      return 0;
+    }
+    if (i > j) {
+      int tmp = i;
+      i = j;
+      j = tmp;
+    }
+
+    long position = (rowOffset(i) + j) * precision.bytes;
+    MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+    int index = (int) (position & ((1L << CHUNK_SHIFT) - 1));
+    return precision == Precision.FLOAT ? chunk.getFloat(index) : chunk.getDouble(index);
+  }
+}
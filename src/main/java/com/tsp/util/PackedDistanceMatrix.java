@@ -0,0 +1,85 @@
+package com.tsp.util;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*
+ * symmetric distance matrix that only stores the upper triangle (without the
+ * diagonal) in one flat array:
+ *
+ * row 0: d(0,1) d(0,2) ... d(0,n-1)
+ * row 1: d(1,2) ... d(1,n-1)
+ * ...
+ *
+ * this needs n(n-1)/2 distance calculations instead of n^2 and a single array
+ * instead of n row arrays
+ */
+public class PackedDistanceMatrix implements DistanceMatrix {
+  // largest n for which n(n-1)/2 still fits into a java array
+  public static final int MAX_SIZE = 65_535;
+
+  private final int n;
+  private final double[] distances;
+
+  private PackedDistanceMatrix(int n) {
+    this.n = n;
+    this.distances = new double[(int) ((long) n * (n - 1) / 2)];
+  }
+
+  public static PackedDistanceMatrix build(List<CityInfo> cities, DistanceMetric metric) {
+    return build(metric.prepare(cities));
+  }
+
+  // copies the upper triangle of any (e.g. on demand) matrix
+  public static PackedDistanceMatrix build(DistanceMatrix source) {
+    int n = source.size();
+    if (n > MAX_SIZE) {
+      throw new IllegalArgumentException("Too many cities for a packed matrix: " + n);
+    }
+
+    PackedDistanceMatrix matrix = new PackedDistanceMatrix(n);
+
+    /*
+     * row i has n-i-1 entries, so the first rows are much longer than the last
+     * ones. to give every task about the same amount of work row k and row
+     * n-1-k are filled together. the parallel stream runs on the common
+     * fork-join pool
+     */
+    IntStream.range(0, (n + 1) / 2).parallel().forEach(k -> {
+      matrix.fillRow(source, k);
+      if (n - 1 - k != k) {
+        matrix.fillRow(source, n - 1 - k);
+      }
+    });
+
+    return matrix;
+  }
+
+  private void fillRow(DistanceMatrix source, int i) {
+    source.getRow(i, i + 1, n, distances, rowOffset(i) + i + 1);
+  }
+
+  // index of d(i,0) if the row was stored completely, so d(i,j) is at offset + j
+  private int rowOffset(int i) {
+    return (int) ((long) i * (2L * n - i - 1) / 2 - i - 1);
+  }
+
+  @Override
+  public int size() {
+    return n;
+  }
+
+  @Override
+  public double get(int i, int j) {
+    if (i == j) {
+      return 0;
+    }
+    if (i > j) {
+      int tmp = i;
+      i = j;
+      j = tmp;
+    }
+    return distances[rowOffset(i) + j];
+  }
+}
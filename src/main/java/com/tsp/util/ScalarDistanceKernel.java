@@ -0,0 +1,24 @@
+package com.tsp.util;
+
+class ScalarDistanceKernel implements DistanceKernel {
+  @Override
+  public void haversineRow(double[] lat, double[] lon, double[] cosLat, int i, int from, int to,
+      double[] out, int offset) {
+    for (int j = from; j < to; j++) {
+      out[offset + j - from] = HaversineMetric.distance(lat[i], lon[i], cosLat[i], lat[j], lon[j], cosLat[j]);
+    }
+  }
+
+  @Override
+  public void chordRow(double[] x, double[] y, double[] z, int i, int from, int to,
+      double[] out, int offset) {
+    for (int j = from; j < to; j++) {
+      out[offset + j - from] = ChordMetric.distance(x[i], y[i], z[i], x[j], y[j], z[j]);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "scalar";
+  }
+}
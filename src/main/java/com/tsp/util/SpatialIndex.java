@@ -0,0 +1,281 @@
+package com.tsp.util;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * immutable k-d tree over the cities as 3D unit vectors. on the unit sphere
+ * the straight line (chord) distance orders points exactly like the great
+ * circle distance, so nearest neighbor and radius queries can be answered with
+ * plain euclidean geometry and no trigonometry.
+ *
+ * the tree is implicit: the city indices are reordered so that every range
+ * [lo, hi) has its splitting city in the middle, everything left of it is
+ * smaller on the split axis and everything right of it bigger. that takes no
+ * node objects, just a few flat arrays.
+ *
+ * all query results are indices into the list the index was built from
+ */
+public class SpatialIndex {
+  // below this size a range is scanned instead of split further
+  private static final int LEAF_SIZE = 8;
+
+  private final double[] x;
+  private final double[] y;
+  private final double[] z;
+  private final int[] order; // city indices in tree order
+  private final byte[] axis; // split axis of the range whose middle is at that position
+
+  private SpatialIndex(int n) {
+    x = new double[n];
+    y = new double[n];
+    z = new double[n];
+    order = new int[n];
+    axis = new byte[n];
+  }
+
+  public static SpatialIndex build(List<CityInfo> cities) {
+    int n = cities.size();
+    SpatialIndex index = new SpatialIndex(n);
+
+    for (int i = 0; i < n; i++) {
+      double[] v = ChordMetric.unitVector(cities.get(i));
+      index.x[i] = v[0];
+      index.y[i] = v[1];
+      index.z[i] = v[2];
+      index.order[i] = i;
+    }
+
+    index.buildRange(0, n);
+    return index;
+  }
+
+  public int size() {
+    return order.length;
+  }
+
+  private void buildRange(int lo, int hi) {
+    if (hi - lo <= LEAF_SIZE) {
+      return;
+    }
+
+    // split along the axis with the largest spread
+    double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+    double[] max = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+    for (int p = lo; p < hi; p++) {
+      int c = order[p];
+      for (int a = 0; a < 3; a++) {
+        double v = coordinate(c, a);
+        min[a] = Math.min(min[a], v);
+        max[a] = Math.max(max[a], v);
+      }
+    }
+    int splitAxis = 0;
+    for (int a = 1; a < 3; a++) {
+      if (max[a] - min[a] > max[splitAxis] - min[splitAxis]) {
+        splitAxis = a;
+      }
+    }
+
+    int mid = (lo + hi) >>> 1;
+    select(lo, hi - 1, mid, splitAxis);
+    axis[mid] = (byte) splitAxis;
+
+    buildRange(lo, mid);
+    buildRange(mid + 1, hi);
+  }
+
+  // quickselect: puts the k-th smallest city of order[lo..hi] on the axis at position k
+  private void select(int lo, int hi, int k, int a) {
+    while (hi > lo) {
+      double pivot = coordinate(order[(lo + hi) >>> 1], a);
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (coordinate(order[i], a) < pivot) {
+          i++;
+        }
+        while (coordinate(order[j], a) > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          int tmp = order[i];
+          order[i] = order[j];
+          order[j] = tmp;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private double coordinate(int city, int a) {
+    return a == 0 ? x[city] : a == 1 ? y[city] : z[city];
+  }
+
+  // index of the city closest to the given coordinates, -1 if the index is empty
+  public int nearest(double latitude, double longitude) {
+    int[] result = nearest(latitude, longitude, 1);
+    return result.length == 0 ? -1 : result[0];
+  }
+
+  // the k closest cities to the given coordinates, nearest first
+  public int[] nearest(double latitude, double longitude, int k) {
+    double[] v = ChordMetric.unitVector(latitude, longitude);
+    return nearest(v[0], v[1], v[2], k, -1);
+  }
+
+  // the k closest other cities of city i, nearest first
+  public int[] nearestNeighbors(int i, int k) {
+    return nearest(x[i], y[i], z[i], k, i);
+  }
+
+  private int[] nearest(double qx, double qy, double qz, int k, int exclude) {
+    k = Math.min(k, exclude < 0 ? size() : size() - 1);
+    if (k <= 0) {
+      return new int[0];
+    }
+
+    Neighbors result = new Neighbors(k);
+    searchNearest(0, size(), qx, qy, qz, exclude, result);
+    return Arrays.copyOf(result.cities, result.count);
+  }
+
+  /*
+   * the k best cities found so far, sorted by squared chord distance. k is
+   * small so a sorted array with insertion is faster than a heap
+   */
+  private static class Neighbors {
+    final int[] cities;
+    final double[] distances;
+    int count;
+
+    Neighbors(int k) {
+      cities = new int[k];
+      distances = new double[k];
+    }
+
+    double worst() {
+      return count < cities.length ? Double.MAX_VALUE : distances[count - 1];
+    }
+
+    void offer(int city, double distance) {
+      if (distance >= worst()) {
+        return;
+      }
+      int pos = count < cities.length ? count++ : count - 1;
+      while (pos > 0 && distances[pos - 1] > distance) {
+        distances[pos] = distances[pos - 1];
+        cities[pos] = cities[pos - 1];
+        pos--;
+      }
+      distances[pos] = distance;
+      cities[pos] = city;
+    }
+  }
+
+  private void searchNearest(int lo, int hi, double qx, double qy, double qz,
+      int exclude, Neighbors result) {
+    if (hi - lo <= LEAF_SIZE) {
+      for (int p = lo; p < hi; p++) {
+        int c = order[p];
+        if (c != exclude) {
+          result.offer(c, squaredDistance(c, qx, qy, qz));
+        }
+      }
+      return;
+    }
+
+    int mid = (lo + hi) >>> 1;
+    int c = order[mid];
+    if (c != exclude) {
+      result.offer(c, squaredDistance(c, qx, qy, qz));
+    }
+
+    int a = axis[mid];
+    double diff = (a == 0 ? qx : a == 1 ? qy : qz) - coordinate(c, a);
+
+    // search the side of the query point first, the other one only if the
+    // splitting plane is closer than the current k-th best
+    if (diff < 0) {
+      searchNearest(lo, mid, qx, qy, qz, exclude, result);
+      if (diff * diff < result.worst()) {
+        searchNearest(mid + 1, hi, qx, qy, qz, exclude, result);
+      }
+    } else {
+      searchNearest(mid + 1, hi, qx, qy, qz, exclude, result);
+      if (diff * diff < result.worst()) {
+        searchNearest(lo, mid, qx, qy, qz, exclude, result);
+      }
+    }
+  }
+
+  // all cities within the given great circle radius (on a sphere) in km
+  public int[] withinRadius(double latitude, double longitude, double radiusKm) {
+    double[] v = ChordMetric.unitVector(latitude, longitude);
+
+    // great circle distance -> chord length on the unit sphere
+    double angle = Math.min(Math.PI, radiusKm / HaversineMetric.EARTH_RADIUS_KM);
+    double chord = 2 * Math.sin(angle / 2);
+
+    Found found = new Found();
+    searchRadius(0, size(), v[0], v[1], v[2], chord * chord, found);
+    return Arrays.copyOf(found.cities, found.count);
+  }
+
+  // growable result list of a radius query
+  private static class Found {
+    int[] cities = new int[16];
+    int count;
+
+    void add(int city) {
+      if (count == cities.length) {
+        cities = Arrays.copyOf(cities, count * 2);
+      }
+      cities[count++] = city;
+    }
+  }
+
+  private void searchRadius(int lo, int hi, double qx, double qy, double qz,
+      double maxSquared, Found found) {
+    if (hi - lo <= LEAF_SIZE) {
+      for (int p = lo; p < hi; p++) {
+        int c = order[p];
+        if (squaredDistance(c, qx, qy, qz) <= maxSquared) {
+          found.add(c);
+        }
+      }
+      return;
+    }
+
+    int mid = (lo + hi) >>> 1;
+    int c = order[mid];
+    if (squaredDistance(c, qx, qy, qz) <= maxSquared) {
+      found.add(c);
+    }
+
+    int a = axis[mid];
+    double diff = (a == 0 ? qx : a == 1 ? qy : qz) - coordinate(c, a);
+    if (diff <= 0 || diff * diff <= maxSquared) {
+      searchRadius(lo, mid, qx, qy, qz, maxSquared, found);
+    }
+    if (diff >= 0 || diff * diff <= maxSquared) {
+      searchRadius(mid + 1, hi, qx, qy, qz, maxSquared, found);
+    }
+  }
+
+  private double squaredDistance(int city, double qx, double qy, double qz) {
+    double dx = x[city] - qx;
+    double dy = y[city] - qy;
+    double dz = z[city] - qz;
+    return dx * dx + dy * dy + dz * dz;
+  }
+}
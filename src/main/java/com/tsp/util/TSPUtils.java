@@ -1,24 +1,49 @@
 package com.tsp.util;
 
 import com.tsp.util.CityData.CityInfo;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 public class TSPUtils {
+  /*
+   * from this size on matrices are kept in memory mapped files instead of the
+   * heap (5000 cities = 100 MB as doubles). the files are reused by later runs
+   * on the same cities, the least recently used ones are deleted once all of
+   * them together are above the cap (default 2 GB, -Dtsp.matrixCacheMB to
+   * change it)
+   */
+  private static final int MAPPED_MATRIX_THRESHOLD = 5000;
+  private static final Path MAPPED_MATRIX_DIRECTORY = Path.of(
+      System.getProperty("java.io.tmpdir"), "tsp-matrices");
+  private static final long MAPPED_MATRIX_DIRECTORY_BYTES =
+      Long.getLong("tsp.matrixCacheMB", 2048) << 20;
+
   /*
    * the matrix is used by the TSP algorithms (Branch&Bound and
    * ACO) to avoid recalculating distances
    */
-  public static double[][] calculateDistanceMatrix(List<CityInfo> cities) {
-    int n = cities.size();
-    double[][] distances = new double[n][n];
+  public static DistanceMatrix calculateDistanceMatrix(List<CityInfo> cities) {
+    return calculateDistanceMatrix(cities, DistanceMetric.VINCENTY);
+  }
+
+  public static DistanceMatrix calculateDistanceMatrix(List<CityInfo> cities, DistanceMetric metric) {
+    // small vincenty matrices go through the shared cache so repeated runs on
+    // (almost) the same cities only compute the new pairs
+    if (metric == DistanceMetric.VINCENTY && DistanceCalculator.fitsInCache(cities.size())) {
+      return PackedDistanceMatrix.build(DistanceCalculator.cachedMatrix(cities));
+    }
 
-    for (int i = 0; i < n; i++) {
-      for (int j = 0; j < n; j++) {
-        distances[i][j] = DistanceCalculator.calculateDistance(cities.get(i), cities.get(j));
+    if (cities.size() >= MAPPED_MATRIX_THRESHOLD) {
+      try {
+        return MappedDistanceMatrix.open(cities, metric, MAPPED_MATRIX_DIRECTORY,
+            MappedDistanceMatrix.Precision.DOUBLE, MAPPED_MATRIX_DIRECTORY_BYTES);
+      } catch (IOException e) {
+        System.err.println("Could not map distance matrix, building it on the heap: " + e.getMessage());
       }
     }
 
-    return distances;
+    return PackedDistanceMatrix.build(cities, metric);
   }
 
   public static int getCityIndex(List<CityInfo> cities, CityInfo city) {
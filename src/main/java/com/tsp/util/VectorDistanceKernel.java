@@ -0,0 +1,71 @@
+package com.tsp.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * SIMD version of the row kernels, processes SPECIES.length() cities per step
+ * (4 doubles with AVX2) and finishes the remainder with the scalar formulas.
+ * only loaded through DistanceKernel when the incubator module is present
+ */
+class VectorDistanceKernel implements DistanceKernel {
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  @Override
+  public void haversineRow(double[] lat, double[] lon, double[] cosLat, int i, int from, int to,
+      double[] out, int offset) {
+    double latI = lat[i];
+    double lonI = lon[i];
+    double cosLatI = cosLat[i];
+
+    int j = from;
+    int upper = from + SPECIES.loopBound(to - from);
+    for (; j < upper; j += SPECIES.length()) {
+      DoubleVector sinDLat = DoubleVector.fromArray(SPECIES, lat, j)
+          .sub(latI).mul(0.5).lanewise(VectorOperators.SIN);
+      DoubleVector sinDLon = DoubleVector.fromArray(SPECIES, lon, j)
+          .sub(lonI).mul(0.5).lanewise(VectorOperators.SIN);
+      DoubleVector a = DoubleVector.fromArray(SPECIES, cosLat, j)
+          .mul(cosLatI).mul(sinDLon).mul(sinDLon)
+          .add(sinDLat.mul(sinDLat));
+      a.sqrt().min(1.0)
+          .lanewise(VectorOperators.ASIN)
+          .mul(2 * HaversineMetric.EARTH_RADIUS_KM)
+          .intoArray(out, offset + j - from);
+    }
+
+    for (; j < to; j++) {
+      out[offset + j - from] = HaversineMetric.distance(latI, lonI, cosLatI, lat[j], lon[j], cosLat[j]);
+    }
+  }
+
+  @Override
+  public void chordRow(double[] x, double[] y, double[] z, int i, int from, int to,
+      double[] out, int offset) {
+    double xI = x[i];
+    double yI = y[i];
+    double zI = z[i];
+
+    int j = from;
+    int upper = from + SPECIES.loopBound(to - from);
+    for (; j < upper; j += SPECIES.length()) {
+      DoubleVector dx = DoubleVector.fromArray(SPECIES, x, j).sub(xI);
+      DoubleVector dy = DoubleVector.fromArray(SPECIES, y, j).sub(yI);
+      DoubleVector dz = DoubleVector.fromArray(SPECIES, z, j).sub(zI);
+      dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz))
+          .sqrt()
+          .mul(HaversineMetric.EARTH_RADIUS_KM)
+          .intoArray(out, offset + j - from);
+    }
+
+    for (; j < to; j++) {
+      out[offset + j - from] = ChordMetric.distance(xI, yI, zI, x[j], y[j], z[j]);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "vector (" + SPECIES.length() + " lanes)";
+  }
+}
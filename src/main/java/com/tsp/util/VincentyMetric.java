@@ -0,0 +1,114 @@
+package com.tsp.util;
+
+import com.tsp.util.CityData.CityInfo;
+import java.util.List;
+
+// Quelle: https://www.baeldung.com/java-find-distance-between-points
+public class VincentyMetric implements DistanceMetric {
+  // WGS-84 Earth parameters
+  private static final double EARTH_RADIUS_A = 6378137.0; // Equatorial radius in meters
+  private static final double EARTH_RADIUS_B = 6356752.314245; // Polar radius in meters
+  private static final double FLATTENING = 1 / 298.257223563; // Earth's flattening
+
+  @Override
+  public String getName() {
+    return "Vincenty";
+  }
+
+  @Override
+  public double distance(CityInfo city1, CityInfo city2) {
+    double U1 = reducedLatitude(city1.getLatitude());
+    double U2 = reducedLatitude(city2.getLatitude());
+    return distance(
+        Math.toRadians(city2.getLongitude()) - Math.toRadians(city1.getLongitude()),
+        Math.sin(U1), Math.cos(U1), Math.sin(U2), Math.cos(U2));
+  }
+
+  @Override
+  public DistanceMatrix prepare(List<CityInfo> cities) {
+    int n = cities.size();
+    double[] lon = new double[n];
+    double[] sinU = new double[n];
+    double[] cosU = new double[n];
+
+    for (int i = 0; i < n; i++) {
+      CityInfo city = cities.get(i);
+      double U = reducedLatitude(city.getLatitude());
+      lon[i] = Math.toRadians(city.getLongitude());
+      sinU[i] = Math.sin(U);
+      cosU[i] = Math.cos(U);
+    }
+
+    return new DistanceMatrix() {
+      @Override
+      public int size() {
+        return n;
+      }
+
+      @Override
+      public double get(int i, int j) {
+        if (i == j) {
+          return 0;
+        }
+        return distance(lon[j] - lon[i], sinU[i], cosU[i], sinU[j], cosU[j]);
+      }
+    };
+  }
+
+  private static double reducedLatitude(double latitude) {
+    return Math.atan((1 - FLATTENING) * Math.tan(Math.toRadians(latitude)));
+  }
+
+  // Vincenty formula, L is the difference in longitude and U the reduced latitudes
+  static double distance(double L, double sinU1, double cosU1, double sinU2, double cosU2) {
+    double lambda = L;
+    double lambdaP;
+    double iterLimit = 100;
+    double cosSqAlpha;
+    double sinSigma;
+    double cos2SigmaM;
+    double cosSigma;
+    double sigma;
+    double sinLambda;
+    double cosLambda;
+
+    do {
+      sinLambda = Math.sin(lambda);
+      cosLambda = Math.cos(lambda);
+      sinSigma = Math.sqrt(
+          (cosU2 * sinLambda) * (cosU2 * sinLambda) +
+              (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda) *
+                  (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
+
+      if (sinSigma == 0)
+        return 0;
+
+      cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+      sigma = Math.atan2(sinSigma, cosSigma);
+      double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+      cosSqAlpha = 1 - sinAlpha * sinAlpha;
+      cos2SigmaM = cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha;
+
+      if (Double.isNaN(cos2SigmaM))
+        cos2SigmaM = 0;
+
+      double C = FLATTENING / 16 * cosSqAlpha * (4 + FLATTENING * (4 - 3 * cosSqAlpha));
+      lambdaP = lambda;
+      lambda = L + (1 - C) * FLATTENING * sinAlpha *
+          (sigma + C * sinSigma * (cos2SigmaM + C * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+
+    } while (Math.abs(lambda - lambdaP) > 1e-12 && --iterLimit > 0);
+
+    if (iterLimit == 0)
+      return 0;
+
+    double uSq = cosSqAlpha * (EARTH_RADIUS_A * EARTH_RADIUS_A - EARTH_RADIUS_B * EARTH_RADIUS_B)
+        / (EARTH_RADIUS_B * EARTH_RADIUS_B);
+    double A = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+    double B = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+    double deltaSigma = B * sinSigma * (cos2SigmaM + B / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) -
+        B / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+
+    return (EARTH_RADIUS_B * A * (sigma - deltaSigma)) / 1000.0; // Convert to kilometers
+  }
+}
@@ -3,6 +3,8 @@ module com.tsp {
   requires javafx.fxml;
   requires com.opencsv;
   requires me.xdrop.fuzzywuzzy;
+  // optional, distance kernels fall back to scalar code without it
+  requires static jdk.incubator.vector;
 
   exports com.tsp;
   exports com.tsp.gui;